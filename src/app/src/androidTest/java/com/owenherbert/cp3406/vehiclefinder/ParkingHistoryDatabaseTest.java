@@ -0,0 +1,280 @@
+package com.owenherbert.cp3406.vehiclefinder;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Instrumented tests and write and query benchmarks for ParkingHistoryDatabase, run against a
+ * database file so that writes go through the journal as they do in the app.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ParkingHistoryDatabaseTest {
+
+    private static final String TAG = "ParkingHistoryBench";
+    private static final String DATABASE_NAME = "parkingHistoryTest.db";
+    private static final long HOUR_MS = 60 * 60 * 1000;
+    private static final int TIMED_QUERIES = 100; // queries averaged per timing
+    private static final int MAX_DEEP_PAGE_RATIO = 4; // slowest allowed deep page, in first pages
+
+    private Context appContext;
+    private ParkingHistoryDatabase database;
+
+    @Before
+    public void setUp() {
+
+        appContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        appContext.deleteDatabase(DATABASE_NAME);
+        database = new ParkingHistoryDatabase(appContext, DATABASE_NAME);
+    }
+
+    @After
+    public void tearDown() {
+
+        database.close();
+        appContext.deleteDatabase(DATABASE_NAME);
+    }
+
+    /**
+     * Inserts the provided number of cleared records, one per hour along a north easterly line.
+     */
+    private void insertRecords(int count) {
+
+        database.runInTransaction(() -> {
+            for (int i = 0; i < count; i++) {
+                database.insertMark(i * HOUR_MS, -19 + i * 1e-5, 146 + i * 1e-5, "Record " + i);
+                database.updateClear(i * HOUR_MS + HOUR_MS / 2);
+            }
+        });
+    }
+
+    /**
+     * Waits until every write queued on the provided ParkingHistory has been flushed, by waiting
+     * for a page read, which is queued behind them.
+     */
+    private static void awaitWrites(ParkingHistory history) throws InterruptedException {
+
+        CountDownLatch latch = new CountDownLatch(1);
+        history.loadPage(0, 1, null, 1, (records, error) -> latch.countDown());
+
+        assertTrue(latch.await(60, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Returns the average time taken to read a page of 50 records after the provided record.
+     */
+    private long timePage(ParkingRecord after) {
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < TIMED_QUERIES; i++) {
+            assertEquals(50, database.getPage(0, Long.MAX_VALUE, after, 50).size());
+        }
+
+        return (System.nanoTime() - start) / TIMED_QUERIES;
+    }
+
+    @Test
+    public void markAndClear_recordsDuration() {
+
+        database.insertMark(1000, -19.25, 146.81, "Smith St car park");
+
+        ParkingRecord record = database.getPage(0, Long.MAX_VALUE, null, 10).get(0);
+        assertFalse(record.isCleared());
+        assertEquals(-1, record.getDurationMs());
+
+        database.updateClear(61000);
+        database.updateClear(99000); // already cleared, ignored
+
+        record = database.getPage(0, Long.MAX_VALUE, null, 10).get(0);
+        assertEquals("Smith St car park", record.getLabel());
+        assertEquals(-19.25, record.getLatitude(), 0);
+        assertEquals(60000, record.getDurationMs());
+    }
+
+    @Test
+    public void updateClear_skipsNewerClearedRecords() {
+
+        database.insertMark(1000, -19.25, 146.81, "Parked");
+        database.insertRecord(2000, 3000, -19.26, 146.82, "Imported");
+
+        database.updateClear(61000);
+
+        List<ParkingRecord> page = database.getPage(0, Long.MAX_VALUE, null, 10);
+        assertEquals(1000, page.get(0).getDurationMs());
+        assertEquals(60000, page.get(1).getDurationMs());
+    }
+
+    @Test
+    public void insertRecord_unknownDuration() {
+
+        database.insertRecord(2000, ParkingRecord.CLEARED_AT_UNKNOWN, -19.26, 146.82, null);
+        database.updateClear(61000); // no open record, ignored
+
+        ParkingRecord record = database.getPage(0, Long.MAX_VALUE, null, 10).get(0);
+        assertTrue(record.isCleared());
+        assertEquals(-1, record.getDurationMs());
+    }
+
+    @Test
+    public void hasRecord_matchesExportedPrecision() {
+
+        database.insertMark(1000, -19.251234567, 146.812345678, null);
+
+        assertTrue(database.hasRecord(1000, -19.2512346, 146.8123457));
+        assertFalse(database.hasRecord(1001, -19.2512346, 146.8123457));
+        assertFalse(database.hasRecord(1000, -19.2512356, 146.8123457));
+    }
+
+    @Test
+    public void getPage_walksEveryRecordNewestFirst() {
+
+        insertRecords(1234);
+
+        ParkingRecord after = null;
+        long previousMarkedAt = Long.MAX_VALUE;
+        int total = 0;
+        List<ParkingRecord> page;
+
+        do {
+            page = database.getPage(0, Long.MAX_VALUE, after, 100);
+
+            for (ParkingRecord record : page) {
+                assertTrue(record.getMarkedAt() < previousMarkedAt);
+                previousMarkedAt = record.getMarkedAt();
+            }
+
+            total += page.size();
+            if (!page.isEmpty()) after = page.get(page.size() - 1);
+        } while (page.size() == 100);
+
+        assertEquals(1234, total);
+    }
+
+    @Test
+    public void getPage_timeRange() {
+
+        insertRecords(100);
+
+        List<ParkingRecord> page = database.getPage(10 * HOUR_MS, 20 * HOUR_MS, null, 100);
+
+        assertEquals(10, page.size());
+        assertEquals(19 * HOUR_MS, page.get(0).getMarkedAt());
+        assertEquals(10 * HOUR_MS, page.get(9).getMarkedAt());
+    }
+
+    @Test
+    public void getPageInBounds_boundingBox() {
+
+        insertRecords(100);
+
+        List<ParkingRecord> page = database.getPageInBounds(-19 + 9.5e-5, 146 + 9.5e-5,
+                -19 + 19.5e-5, 146 + 19.5e-5, null, 100);
+
+        assertEquals(10, page.size());
+        assertEquals("Record 19", page.get(0).getLabel());
+        assertEquals("Record 10", page.get(9).getLabel());
+    }
+
+    @Test
+    public void stream_visitsOldestFirst() throws IOException {
+
+        insertRecords(500);
+
+        final long[] visited = {0, -1};
+
+        database.stream(0, Long.MAX_VALUE, record -> {
+            assertTrue(record.getMarkedAt() > visited[1]);
+            visited[1] = record.getMarkedAt();
+            visited[0]++;
+        });
+
+        assertEquals(500, visited[0]);
+    }
+
+    @Test
+    public void benchmark_insertAndQuery() throws InterruptedException {
+
+        int count = 100000;
+
+        long start = System.nanoTime();
+        insertRecords(count);
+        long insertNs = System.nanoTime() - start;
+
+        Log.i(TAG, "bulk insert: " + insertNs / count + " ns/record over " + count + " records");
+
+        // the app's write path, south of the other records and after them in time
+        ParkingHistory history = new ParkingHistory(database);
+        int writes = 200;
+
+        // each mark and clear waited for, one small transaction each as when used in the app
+        start = System.nanoTime();
+        for (int i = 0; i < writes; i++) {
+            history.recordMark((count + i) * HOUR_MS, -30, 146, "Single " + i);
+            awaitWrites(history);
+            history.recordClear((count + i) * HOUR_MS + HOUR_MS / 2);
+            awaitWrites(history);
+        }
+        Log.i(TAG, "single write: " + (System.nanoTime() - start) / (2 * writes) / 1000
+                + " us/write");
+
+        // marks and clears queued together and flushed in batches
+        start = System.nanoTime();
+        for (int i = writes; i < 2 * writes; i++) {
+            history.recordMark((count + i) * HOUR_MS, -30, 146, "Batched " + i);
+            history.recordClear((count + i) * HOUR_MS + HOUR_MS / 2);
+        }
+        awaitWrites(history);
+        Log.i(TAG, "batched write: " + (System.nanoTime() - start) / (2 * writes) / 1000
+                + " us/write");
+
+        List<ParkingRecord> writtenPage = database.getPage(count * HOUR_MS, Long.MAX_VALUE,
+                null, 4 * writes);
+        assertEquals(2 * writes, writtenPage.size());
+        assertEquals(HOUR_MS / 2, writtenPage.get(0).getDurationMs());
+
+        // first page, a page deep into the history, a time range and a bounding box
+        List<ParkingRecord> firstPage = database.getPage(0, Long.MAX_VALUE, null, 50);
+        ParkingRecord deep = database.getPage(0, 10000 * HOUR_MS, null, 1).get(0);
+        List<ParkingRecord> deepPage = database.getPage(0, Long.MAX_VALUE, deep, 50);
+
+        long firstPageNs = timePage(null);
+        long deepPageNs = timePage(deep);
+        Log.i(TAG, "first page: " + firstPageNs / 1000 + " us");
+        Log.i(TAG, "deep page: " + deepPageNs / 1000 + " us");
+
+        start = System.nanoTime();
+        List<ParkingRecord> rangePage = database.getPage(50000 * HOUR_MS, 50024 * HOUR_MS,
+                null, 50);
+        Log.i(TAG, "time range page: " + (System.nanoTime() - start) / 1000 + " us");
+
+        start = System.nanoTime();
+        List<ParkingRecord> boundsPage = database.getPageInBounds(-19 + 0.499995, 146 + 0.499995,
+                -19 + 0.500295, 146 + 0.500295, null, 50);
+        Log.i(TAG, "bounding box page: " + (System.nanoTime() - start) / 1000 + " us");
+
+        assertEquals(50, firstPage.size());
+        assertEquals(50, deepPage.size());
+        assertEquals(9998 * HOUR_MS, deepPage.get(0).getMarkedAt());
+        assertEquals(24, rangePage.size());
+        assertEquals(30, boundsPage.size());
+
+        // a keyset page costs about the same wherever it starts, unlike an offset page
+        assertTrue("deep page took " + deepPageNs + " ns, first page " + firstPageNs + " ns",
+                deepPageNs < firstPageNs * MAX_DEEP_PAGE_RATIO);
+    }
+}
@@ -0,0 +1,246 @@
+package com.owenherbert.cp3406.vehiclefinder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * GazetteerIndex class provides offline reverse geocoding over a gazetteer index file produced by
+ * GazetteerIndexBuilder. The file is memory-mapped rather than read, so features and names are
+ * only paged in by the operating system as lookups touch them and never copied onto the heap.
+ *
+ * Features are stored as an implicit k-d tree: the feature in the middle of any range splits the
+ * rest of the range by latitude or longitude, alternating with depth. Unlike a uniform grid the
+ * tree adapts to the data, so lookups stay logarithmic when features cluster in city centres.
+ *
+ * The index file is laid out as follows (all values big-endian):
+ *
+ * header        magic, version and feature count (3 ints)
+ * features      feature count * (latitude int, longitude int, name offset int) in tree order,
+ *               coordinates in 1e-7 degrees
+ * string table  per name an unsigned short byte length followed by the UTF-8 bytes
+ *
+ * @author Owen Herbert
+ */
+public class GazetteerIndex {
+
+    // file format constants
+    static final int MAGIC = 0x5646475A; // "VFGZ"
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 12; // header size in bytes
+    static final int FEATURE_SIZE = 12; // feature record size in bytes
+    static final double E7 = 1e7; // coordinate fixed point scale
+
+    // utility constants
+    private static final double METRES_PER_DEGREE = 111320.0; // metres per degree of latitude
+
+    private final ByteBuffer buffer; // mapped index file
+    private final int featureCount; // number of features
+    private final int stringsOffset; // byte offset of the string table
+
+    /**
+     * Constructs a GazetteerIndex object over an already mapped index file.
+     *
+     * @param buffer the index file contents
+     */
+    GazetteerIndex(ByteBuffer buffer) throws GazetteerIndexException {
+
+        this.buffer = buffer;
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new GazetteerIndexException("Not a gazetteer index file");
+        }
+
+        if (buffer.getInt(4) != VERSION) {
+            throw new GazetteerIndexException("Unsupported gazetteer index version "
+                    + buffer.getInt(4));
+        }
+
+        featureCount = buffer.getInt(8);
+        long stringsStart = HEADER_SIZE + (long) featureCount * FEATURE_SIZE;
+
+        if (featureCount < 0 || stringsStart > buffer.capacity()) {
+            throw new GazetteerIndexException("Corrupt gazetteer index header");
+        }
+
+        stringsOffset = (int) stringsStart;
+
+        // names are stored in feature order, so a complete last name means a complete table
+        if (featureCount > 0) {
+
+            long lastName = stringsStart
+                    + buffer.getInt(HEADER_SIZE + (featureCount - 1) * FEATURE_SIZE + 8);
+
+            if (lastName < stringsStart || lastName + 2 > buffer.capacity()
+                    || lastName + 2 + (buffer.getShort((int) lastName) & 0xFFFF)
+                    > buffer.capacity()) {
+                throw new GazetteerIndexException("Truncated gazetteer index string table");
+            }
+        }
+    }
+
+    /**
+     * Opens and memory-maps the provided gazetteer index file.
+     *
+     * @param file the index file
+     * @return the GazetteerIndex
+     */
+    public static GazetteerIndex open(File file) throws IOException {
+
+        // the mapping remains valid after the channel is closed
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+             FileChannel channel = randomAccessFile.getChannel()) {
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    channel.size());
+            return new GazetteerIndex(buffer);
+        }
+    }
+
+    /**
+     * Returns the index of the feature nearest to the provided latitude and longitude point, or -1
+     * if no feature lies within the provided distance. Distances use an equirectangular
+     * approximation, which is accurate at the scale of a car park.
+     *
+     * @param latitude the latitude of the point
+     * @param longitude the longitude of the point
+     * @param maxDistanceMetres the maximum search distance in metres
+     * @return the feature index or -1
+     */
+    public int findNearest(double latitude, double longitude, double maxDistanceMetres) {
+
+        Query query = new Query(latitude, longitude, maxDistanceMetres);
+        search(0, featureCount, true, query);
+
+        return query.nearest;
+    }
+
+    /**
+     * Searches the subtree holding the provided range of features, nearest side first, skipping
+     * the far side when the splitting feature is further along its axis than the nearest feature
+     * found so far.
+     *
+     * @param start the first feature of the subtree
+     * @param end the feature after the last feature of the subtree
+     * @param byLatitude if the subtree is split by latitude rather than longitude
+     * @param query the Query
+     */
+    private void search(int start, int end, boolean byLatitude, Query query) {
+
+        if (start >= end) return;
+
+        int middle = (start + end) >>> 1;
+        double dLat = (getLatitude(middle) - query.latitude) * METRES_PER_DEGREE;
+        double dLon = (getLongitude(middle) - query.longitude) * query.metresPerDegreeLon;
+        double distance = Math.sqrt(dLat * dLat + dLon * dLon);
+
+        if (distance <= query.nearestDistance) {
+            query.nearest = middle;
+            query.nearestDistance = distance;
+        }
+
+        // features before the middle lie at or below it along the axis, those after at or above
+        double axisDistance = byLatitude ? dLat : dLon;
+
+        if (axisDistance > 0) {
+            search(start, middle, !byLatitude, query);
+            if (axisDistance <= query.nearestDistance) search(middle + 1, end, !byLatitude, query);
+        } else {
+            search(middle + 1, end, !byLatitude, query);
+            if (-axisDistance <= query.nearestDistance) search(start, middle, !byLatitude, query);
+        }
+    }
+
+    /**
+     * Returns the name of the nearest feature within the provided distance, or null if there is
+     * none.
+     *
+     * @param latitude the latitude of the point
+     * @param longitude the longitude of the point
+     * @param maxDistanceMetres the maximum search distance in metres
+     * @return the feature name or null
+     */
+    public String findNearestName(double latitude, double longitude, double maxDistanceMetres) {
+
+        int feature = findNearest(latitude, longitude, maxDistanceMetres);
+        return feature < 0 ? null : getName(feature);
+    }
+
+    /**
+     * Returns the latitude of the provided feature.
+     *
+     * @param feature the feature index
+     * @return the latitude in degrees
+     */
+    public double getLatitude(int feature) {
+
+        return buffer.getInt(HEADER_SIZE + feature * FEATURE_SIZE) / E7;
+    }
+
+    /**
+     * Returns the longitude of the provided feature.
+     *
+     * @param feature the feature index
+     * @return the longitude in degrees
+     */
+    public double getLongitude(int feature) {
+
+        return buffer.getInt(HEADER_SIZE + feature * FEATURE_SIZE + 4) / E7;
+    }
+
+    /**
+     * Returns the name of the provided feature.
+     *
+     * @param feature the feature index
+     * @return the feature name
+     */
+    public String getName(int feature) {
+
+        int offset = stringsOffset + buffer.getInt(HEADER_SIZE + feature * FEATURE_SIZE + 8);
+        int length = buffer.getShort(offset) & 0xFFFF;
+
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(offset + 2 + i);
+        }
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public int getFeatureCount() {
+
+        return featureCount;
+    }
+
+    /**
+     * Query class holds the point being looked up and the nearest feature found so far.
+     */
+    private static class Query {
+
+        private final double latitude; // latitude of the point
+        private final double longitude; // longitude of the point
+        private final double metresPerDegreeLon; // metres per degree of longitude at the point
+        private int nearest = -1; // nearest feature found, -1 if none
+        private double nearestDistance; // distance to the nearest feature, or the search limit
+
+        Query(double latitude, double longitude, double maxDistanceMetres) {
+
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.metresPerDegreeLon = METRES_PER_DEGREE * Math.cos(Math.toRadians(latitude));
+            this.nearestDistance = maxDistanceMetres;
+        }
+    }
+
+    public static class GazetteerIndexException extends IOException {
+
+        public GazetteerIndexException(String message) {
+
+            super(message);
+        }
+    }
+}
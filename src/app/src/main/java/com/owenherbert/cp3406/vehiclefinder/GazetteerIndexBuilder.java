@@ -0,0 +1,257 @@
+package com.owenherbert.cp3406.vehiclefinder;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * GazetteerIndexBuilder class builds the gazetteer index file read by GazetteerIndex from a CSV
+ * file of "name,latitude,longitude" rows. Names containing commas may be double quoted. An index
+ * to bundle or sideload can be built from the command line with the gazetteer-tool module:
+ *
+ * ./gradlew :gazetteer-tool:run --args="/path/to/gazetteer.csv /path/to/gazetteer.idx"
+ *
+ * @author Owen Herbert
+ */
+public class GazetteerIndexBuilder {
+
+    // utility constants
+    private static final int MAX_NAME_BYTES = 0xFFFF; // longest encodable name
+
+    // feature data
+    private final List<String> names = new ArrayList<>();
+    private int[] latitudes = new int[1024]; // latitudes in 1e-7 degrees
+    private int[] longitudes = new int[1024]; // longitudes in 1e-7 degrees
+
+    /**
+     * Adds a feature to the index.
+     *
+     * @param name the feature name
+     * @param latitude the feature latitude
+     * @param longitude the feature longitude
+     */
+    public void addFeature(String name, double latitude, double longitude) {
+
+        if (latitude < -90 || latitude > 90 || longitude < -180 || longitude > 180) {
+            throw new IllegalArgumentException("Coordinate out of range for " + name);
+        }
+
+        int count = names.size();
+
+        if (count == latitudes.length) {
+            latitudes = Arrays.copyOf(latitudes, count * 2);
+            longitudes = Arrays.copyOf(longitudes, count * 2);
+        }
+
+        latitudes[count] = (int) Math.round(latitude * GazetteerIndex.E7);
+        longitudes[count] = (int) Math.round(longitude * GazetteerIndex.E7);
+        names.add(name);
+    }
+
+    /**
+     * Adds every feature in the provided CSV. Blank lines and a header row are skipped.
+     *
+     * @param reader the CSV source
+     */
+    public void addCsv(Reader reader) throws IOException {
+
+        BufferedReader bufferedReader = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+
+        while ((line = bufferedReader.readLine()) != null) {
+
+            lineNumber++;
+            if (line.trim().isEmpty()) continue;
+
+            List<String> fields = splitCsvLine(line);
+
+            if (fields.size() < 3) {
+                throw new IOException("Expected name,latitude,longitude on line " + lineNumber);
+            }
+
+            try {
+                addFeature(fields.get(0), Double.parseDouble(fields.get(1).trim()),
+                        Double.parseDouble(fields.get(2).trim()));
+            } catch (NumberFormatException err) {
+
+                // a header row is the only row allowed to hold non numeric coordinates
+                if (lineNumber != 1) {
+                    throw new IOException("Invalid coordinate on line " + lineNumber, err);
+                }
+            } catch (IllegalArgumentException err) {
+                throw new IOException(err.getMessage() + " on line " + lineNumber, err);
+            }
+        }
+    }
+
+    /**
+     * Writes the index, ordering the features into an implicit k-d tree.
+     *
+     * @param outputStream the index destination
+     */
+    public void write(OutputStream outputStream) throws IOException {
+
+        int count = names.size();
+        int[] order = new int[count];
+
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+
+        buildTree(order, 0, count, true);
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(outputStream));
+
+        // header
+        out.writeInt(GazetteerIndex.MAGIC);
+        out.writeInt(GazetteerIndex.VERSION);
+        out.writeInt(count);
+
+        // features, encoding names up front to find their string table offsets
+        byte[][] encodedNames = new byte[count][];
+        int stringOffset = 0;
+
+        for (int i : order) {
+
+            byte[] bytes = names.get(i).getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > MAX_NAME_BYTES) bytes = Arrays.copyOf(bytes, MAX_NAME_BYTES);
+            encodedNames[i] = bytes;
+
+            out.writeInt(latitudes[i]);
+            out.writeInt(longitudes[i]);
+            out.writeInt(stringOffset);
+            stringOffset += 2 + bytes.length;
+        }
+
+        // string table
+        for (int i : order) {
+            out.writeShort(encodedNames[i].length);
+            out.write(encodedNames[i]);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Returns the number of features added.
+     *
+     * @return the feature count
+     */
+    public int getFeatureCount() {
+
+        return names.size();
+    }
+
+    /**
+     * Orders the provided range of features into a k-d tree, placing the median feature along the
+     * axis in the middle of the range with no greater features before it and no smaller features
+     * after it, then ordering each side by the other axis.
+     *
+     * @param order the feature order
+     * @param start the first position of the range
+     * @param end the position after the last position of the range
+     * @param byLatitude if the range is split by latitude rather than longitude
+     */
+    private void buildTree(int[] order, int start, int end, boolean byLatitude) {
+
+        // ranges are at most 2^31 features, so the recursion is at most 31 deep
+        while (end - start > 1) {
+
+            int middle = (start + end) >>> 1;
+            selectMedian(order, start, end - 1, middle, byLatitude ? latitudes : longitudes);
+
+            buildTree(order, start, middle, !byLatitude);
+            start = middle + 1;
+            byLatitude = !byLatitude;
+        }
+    }
+
+    /**
+     * Partially sorts the provided range so that the feature at the provided position is the one
+     * a full sort by the provided coordinates would put there, using quickselect.
+     *
+     * @param order the feature order
+     * @param left the first position of the range
+     * @param right the last position of the range
+     * @param position the position to select
+     * @param coordinates the coordinates to order by
+     */
+    private static void selectMedian(int[] order, int left, int right, int position,
+                                     int[] coordinates) {
+
+        while (left < right) {
+
+            int pivot = coordinates[order[(left + right) >>> 1]];
+            int i = left;
+            int j = right;
+
+            // Hoare partition, stopping on equal coordinates so duplicates split evenly
+            while (i <= j) {
+
+                while (coordinates[order[i]] < pivot) i++;
+                while (coordinates[order[j]] > pivot) j--;
+
+                if (i <= j) {
+                    int swap = order[i];
+                    order[i++] = order[j];
+                    order[j--] = swap;
+                }
+            }
+
+            if (position <= j) {
+                right = j;
+            } else if (position >= i) {
+                left = i;
+            } else {
+                return; // positions between j and i hold the pivot coordinate
+            }
+        }
+    }
+
+    /**
+     * Splits a CSV line into its fields, honouring double quoted fields.
+     *
+     * @param line the CSV line
+     * @return the fields
+     */
+    private static List<String> splitCsvLine(String line) {
+
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean isQuoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+
+            char character = line.charAt(i);
+
+            if (isQuoted) {
+                if (character == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"'); // escaped quote
+                    i++;
+                } else if (character == '"') {
+                    isQuoted = false;
+                } else {
+                    field.append(character);
+                }
+            } else if (character == '"') {
+                isQuoted = true;
+            } else if (character == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(character);
+            }
+        }
+
+        fields.add(field.toString());
+        return fields;
+    }
+}
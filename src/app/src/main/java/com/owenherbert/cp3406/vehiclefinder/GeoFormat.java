@@ -0,0 +1,95 @@
+package com.owenherbert.cp3406.vehiclefinder;
+
+import android.util.Xml;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * GeoFormat enum lists the geographic data file formats the parking history can be exported to and
+ * imported from, and creates the platform backed writer or reader for each.
+ *
+ * @author Owen Herbert
+ */
+public enum GeoFormat {
+
+    GPX("application/gpx+xml", ".gpx"),
+    GEOJSON("application/geo+json", ".geojson");
+
+    private final String mimeType; // MIME type of the format
+    private final String extension; // file name extension of the format
+
+    GeoFormat(String mimeType, String extension) {
+
+        this.mimeType = mimeType;
+        this.extension = extension;
+    }
+
+    /**
+     * Returns a GeoWriter for this format that writes to the provided output.
+     *
+     * @param writer the output
+     * @return the GeoWriter
+     */
+    public GeoWriter newWriter(Writer writer) throws IOException {
+
+        if (this == GPX) return new GpxWriter(Xml.newSerializer(), writer);
+
+        return new GeoJsonWriter(writer);
+    }
+
+    /**
+     * Reads the provided input in this format.
+     *
+     * @param reader the input
+     * @param listener the GeoListener
+     */
+    public void read(Reader reader, GeoListener listener) throws IOException {
+
+        if (this == GPX) {
+            new GpxReader(Xml.newPullParser()).read(reader, listener);
+        } else {
+            new GeoJsonReader().read(reader, listener);
+        }
+    }
+
+    /**
+     * Detects the format of the provided input from its first character other than whitespace or
+     * a byte order mark, leaving the input where it was.
+     *
+     * @param reader the input
+     * @return the GeoFormat
+     */
+    public static GeoFormat detect(BufferedReader reader) throws IOException {
+
+        reader.mark(1024);
+
+        try {
+            for (int i = 0; i < 1024; i++) {
+
+                int character = reader.read();
+
+                if (character == '<') return GPX;
+                if (character == '{') return GEOJSON;
+                if (character == -1 || !(Character.isWhitespace(character)
+                        || character == '\uFEFF')) break;
+            }
+        } finally {
+            reader.reset();
+        }
+
+        throw new IOException("Unrecognised file format");
+    }
+
+    public String getMimeType() {
+
+        return mimeType;
+    }
+
+    public String getExtension() {
+
+        return extension;
+    }
+}
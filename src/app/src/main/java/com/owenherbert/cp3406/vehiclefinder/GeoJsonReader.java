@@ -0,0 +1,401 @@
+package com.owenherbert.cp3406.vehiclefinder;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * GeoJsonReader class pull-parses GeoJSON, passing waypoints and track points to a GeoListener as
+ * they are read. A FeatureCollection, a single Feature or a bare geometry can be read. Points and
+ * MultiPoints are reported as waypoints, and LineStrings and MultiLineStrings as tracks. Polygons
+ * are skipped.
+ *
+ * Coordinates are streamed when the geometry's type and its feature's properties have already
+ * been read, as in files written by GeoJsonWriter. Members may appear in any order, but when the
+ * coordinates come first they are held in memory until the feature has been read.
+ *
+ * @author Owen Herbert
+ */
+public class GeoJsonReader {
+
+    /**
+     * Reads the provided GeoJSON document.
+     *
+     * @param reader the input
+     * @param listener the GeoListener
+     */
+    public void read(Reader reader, GeoListener listener) throws IOException {
+
+        JsonReader jsonReader = new JsonReader(reader);
+
+        try {
+            readObject(jsonReader, listener, null);
+        } catch (IllegalStateException | NumberFormatException err) {
+            throw new IOException("Invalid GeoJSON: " + err.getMessage(), err);
+        }
+    }
+
+    /**
+     * Reads a GeoJSON object of any type. A Point, and coordinates read before the geometry's type
+     * or its feature's properties, are only reported once the feature has been read.
+     *
+     * @param jsonReader the JsonReader, positioned at the object
+     * @param listener the GeoListener
+     * @param feature the feature the object is the geometry of, or null
+     */
+    private void readObject(JsonReader jsonReader, GeoListener listener, Feature feature)
+            throws IOException {
+
+        Feature object = new Feature();
+        Feature owner = feature != null ? feature : object;
+
+        jsonReader.beginObject();
+
+        while (jsonReader.hasNext()) {
+
+            String member = jsonReader.nextName();
+
+            if (jsonReader.peek() == JsonToken.NULL) {
+                jsonReader.nextNull();
+                continue;
+            }
+
+            switch (member) {
+                case "type":
+                    object.type = jsonReader.nextString();
+                    break;
+                case "features":
+                    jsonReader.beginArray();
+                    while (jsonReader.hasNext()) readObject(jsonReader, listener, null);
+                    jsonReader.endArray();
+                    break;
+                case "geometry":
+                    readObject(jsonReader, listener, owner);
+                    break;
+                case "geometries":
+                    jsonReader.beginArray();
+                    while (jsonReader.hasNext()) readObject(jsonReader, listener, owner);
+                    jsonReader.endArray();
+                    break;
+                case "properties":
+                    readProperties(jsonReader, owner);
+                    owner.hasProperties = true;
+                    break;
+                case "coordinates":
+                    if ("Polygon".equals(object.type) || "MultiPolygon".equals(object.type)) {
+                        jsonReader.skipValue();
+                    } else if (object.type != null && (owner == object || owner.hasProperties)) {
+                        readCoordinates(jsonReader, listener, owner,
+                                "MultiPoint".equals(object.type));
+                    } else {
+                        object.coordinates = bufferCoordinates(jsonReader, owner);
+                    }
+                    break;
+                default:
+                    jsonReader.skipValue();
+                    break;
+            }
+        }
+
+        jsonReader.endObject();
+
+        // buffered coordinates are reported with the owner, now that their type is known
+        if (object.coordinates != null) {
+            object.coordinates.type = object.type;
+            owner.bufferedCoordinates.add(object.coordinates);
+        }
+
+        // the owner reports its point and buffered coordinates once all of its members are read
+        if (owner == object) {
+
+            if (object.hasPoint) {
+                listener.onWaypoint(object.latitude, object.longitude, object.timeMs,
+                        object.name, object.durationMs);
+            }
+
+            for (Coordinates coordinates : object.bufferedCoordinates) {
+                reportCoordinates(coordinates, listener, object);
+            }
+        }
+    }
+
+    /**
+     * Reads the properties used by GeoJsonWriter into the provided feature.
+     *
+     * @param jsonReader the JsonReader, positioned at the properties object
+     * @param feature the Feature
+     */
+    private void readProperties(JsonReader jsonReader, Feature feature) throws IOException {
+
+        jsonReader.beginObject();
+
+        while (jsonReader.hasNext()) {
+
+            String member = jsonReader.nextName();
+            JsonToken token = jsonReader.peek();
+
+            if (member.equals("name") && token == JsonToken.STRING) {
+                feature.name = jsonReader.nextString();
+            } else if (member.equals("time") && token == JsonToken.STRING) {
+                feature.timeMs = GeoTime.parse(jsonReader.nextString());
+            } else if (member.equals("durationMs") && token == JsonToken.NUMBER) {
+                feature.durationMs = jsonReader.nextLong();
+            } else {
+                jsonReader.skipValue();
+            }
+        }
+
+        jsonReader.endObject();
+    }
+
+    /**
+     * Reads a coordinates array. A single position is stored as the point of the feature, an
+     * array of positions is reported as a track or, for a MultiPoint, as waypoints, and an array
+     * of arrays of positions is reported as one track per inner array.
+     *
+     * @param jsonReader the JsonReader, positioned at the coordinates array
+     * @param listener the GeoListener
+     * @param feature the feature the coordinates belong to
+     * @param isMultiPoint if the coordinates are those of a MultiPoint
+     */
+    private void readCoordinates(JsonReader jsonReader, GeoListener listener, Feature feature,
+                                 boolean isMultiPoint) throws IOException {
+
+        jsonReader.beginArray();
+
+        // a single position
+        if (jsonReader.hasNext() && jsonReader.peek() == JsonToken.NUMBER) {
+            feature.longitude = jsonReader.nextDouble();
+            feature.latitude = jsonReader.nextDouble();
+            feature.hasPoint = true;
+            while (jsonReader.hasNext()) jsonReader.skipValue(); // altitude
+            jsonReader.endArray();
+            return;
+        }
+
+        boolean hasStartedTrack = false;
+
+        while (jsonReader.hasNext()) {
+
+            jsonReader.beginArray();
+
+            if (jsonReader.hasNext() && jsonReader.peek() == JsonToken.NUMBER) {
+
+                // a position of a LineString or MultiPoint
+                double longitude = jsonReader.nextDouble();
+                double latitude = jsonReader.nextDouble();
+                while (jsonReader.hasNext()) jsonReader.skipValue();
+
+                if (isMultiPoint) {
+                    listener.onWaypoint(latitude, longitude, feature.timeMs, feature.name,
+                            feature.durationMs);
+                } else {
+                    if (!hasStartedTrack) listener.onTrackStart(feature.name);
+                    hasStartedTrack = true;
+                    listener.onTrackPoint(latitude, longitude, GeoTime.NONE);
+                }
+            } else {
+
+                // a line of a MultiLineString
+                listener.onTrackStart(feature.name);
+
+                while (jsonReader.hasNext()) {
+                    jsonReader.beginArray();
+                    double longitude = jsonReader.nextDouble();
+                    double latitude = jsonReader.nextDouble();
+                    while (jsonReader.hasNext()) jsonReader.skipValue();
+                    jsonReader.endArray();
+
+                    listener.onTrackPoint(latitude, longitude, GeoTime.NONE);
+                }
+
+                listener.onTrackEnd();
+            }
+
+            jsonReader.endArray();
+        }
+
+        if (hasStartedTrack) listener.onTrackEnd();
+
+        jsonReader.endArray();
+    }
+
+    /**
+     * Reads a coordinates array of a geometry whose type or feature properties are not yet known,
+     * telling the geometry types apart by nesting depth. A single position is stored as the point
+     * of the feature, arrays of positions and arrays of arrays of positions are buffered, and
+     * anything nested deeper, which can only be a MultiPolygon, is skipped.
+     *
+     * @param jsonReader the JsonReader, positioned at the coordinates array
+     * @param feature the feature the coordinates belong to
+     * @return the buffered Coordinates, or null if there are none to report
+     */
+    private Coordinates bufferCoordinates(JsonReader jsonReader, Feature feature)
+            throws IOException {
+
+        jsonReader.beginArray();
+
+        // a single position
+        if (jsonReader.hasNext() && jsonReader.peek() == JsonToken.NUMBER) {
+            feature.longitude = jsonReader.nextDouble();
+            feature.latitude = jsonReader.nextDouble();
+            feature.hasPoint = true;
+            while (jsonReader.hasNext()) jsonReader.skipValue(); // altitude
+            jsonReader.endArray();
+            return null;
+        }
+
+        Coordinates coordinates = new Coordinates();
+        boolean isTooDeep = false;
+
+        while (jsonReader.hasNext()) {
+
+            jsonReader.beginArray();
+
+            if (isTooDeep) {
+                while (jsonReader.hasNext()) jsonReader.skipValue();
+            } else if (jsonReader.hasNext() && jsonReader.peek() == JsonToken.NUMBER) {
+                readPosition(jsonReader, coordinates); // a position of a single line
+            } else {
+
+                // a line of several lines, or a polygon if its positions are nested deeper
+                coordinates.endLine();
+
+                while (jsonReader.hasNext()) {
+                    if (!isTooDeep && jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+                        jsonReader.beginArray();
+                        if (jsonReader.hasNext() && jsonReader.peek() == JsonToken.NUMBER) {
+                            readPosition(jsonReader, coordinates);
+                        } else {
+                            isTooDeep = true;
+                            while (jsonReader.hasNext()) jsonReader.skipValue();
+                        }
+                        jsonReader.endArray();
+                    } else {
+                        jsonReader.skipValue();
+                    }
+                }
+
+                coordinates.endLine();
+            }
+
+            jsonReader.endArray();
+        }
+
+        jsonReader.endArray();
+
+        return isTooDeep ? null : coordinates;
+    }
+
+    /**
+     * Reads the longitude and latitude of a position into the provided Coordinates, skipping any
+     * altitude.
+     */
+    private static void readPosition(JsonReader jsonReader, Coordinates coordinates)
+            throws IOException {
+
+        double longitude = jsonReader.nextDouble();
+        double latitude = jsonReader.nextDouble();
+        while (jsonReader.hasNext()) jsonReader.skipValue();
+
+        coordinates.add(latitude, longitude);
+    }
+
+    /**
+     * Reports buffered coordinates as waypoints for a MultiPoint, or as tracks for a LineString or
+     * MultiLineString. Coordinates of any other type are not reported.
+     *
+     * @param coordinates the Coordinates
+     * @param listener the GeoListener
+     * @param feature the feature the coordinates belong to
+     */
+    private static void reportCoordinates(Coordinates coordinates, GeoListener listener,
+                                          Feature feature) throws IOException {
+
+        boolean isMultiPoint = "MultiPoint".equals(coordinates.type);
+
+        if (!isMultiPoint && !"LineString".equals(coordinates.type)
+                && !"MultiLineString".equals(coordinates.type)) {
+            return;
+        }
+
+        coordinates.endLine();
+        int start = 0;
+
+        for (int line = 0; line < coordinates.lineCount; line++) {
+
+            int end = coordinates.lineEnds[line];
+
+            if (!isMultiPoint) listener.onTrackStart(feature.name);
+
+            for (int i = start; i < end; i++) {
+
+                double latitude = coordinates.values[2 * i];
+                double longitude = coordinates.values[2 * i + 1];
+
+                if (isMultiPoint) {
+                    listener.onWaypoint(latitude, longitude, feature.timeMs, feature.name,
+                            feature.durationMs);
+                } else {
+                    listener.onTrackPoint(latitude, longitude, GeoTime.NONE);
+                }
+            }
+
+            if (!isMultiPoint) listener.onTrackEnd();
+            start = end;
+        }
+    }
+
+    /**
+     * Coordinates class holds positions buffered until their geometry's type and feature are
+     * known, split into lines.
+     */
+    private static class Coordinates {
+
+        private String type; // GeoJSON type of the geometry
+        private double[] values = new double[64]; // latitude and longitude pairs
+        private int count; // number of positions
+        private int[] lineEnds = new int[4]; // position after the last position of each line
+        private int lineCount; // number of ended lines
+
+        void add(double latitude, double longitude) {
+
+            if (2 * count == values.length) values = Arrays.copyOf(values, values.length * 2);
+
+            values[2 * count] = latitude;
+            values[2 * count + 1] = longitude;
+            count++;
+        }
+
+        void endLine() {
+
+            // lines are only ended where positions follow the previous end
+            if (count == (lineCount > 0 ? lineEnds[lineCount - 1] : 0)) return;
+
+            if (lineCount == lineEnds.length) lineEnds = Arrays.copyOf(lineEnds, lineCount * 2);
+            lineEnds[lineCount++] = count;
+        }
+    }
+
+    /**
+     * Feature class holds the properties and point of the feature being read.
+     */
+    private static class Feature {
+
+        private String type; // GeoJSON type of the object
+        private boolean hasProperties; // if the properties have been read
+        private Coordinates coordinates; // coordinates buffered for the object, if any
+        private final List<Coordinates> bufferedCoordinates = new ArrayList<>(); // for the owner
+        private String name; // name property, null if there is none
+        private long timeMs = GeoTime.NONE; // time property
+        private long durationMs = -1; // durationMs property, -1 if there is none
+        private boolean hasPoint; // if a Point position has been read
+        private double latitude; // Point latitude
+        private double longitude; // Point longitude
+    }
+}
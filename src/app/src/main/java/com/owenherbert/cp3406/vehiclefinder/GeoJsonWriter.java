@@ -0,0 +1,104 @@
+package com.owenherbert.cp3406.vehiclefinder;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * GeoJsonWriter class is a GeoWriter that streams a GeoJSON FeatureCollection through a JsonWriter.
+ * Waypoints are written as Point features with name, time and durationMs properties, and tracks as
+ * LineString features. As a track's properties are written before its coordinates, track point
+ * times are not kept in GeoJSON; use GPX where they are needed.
+ *
+ * @author Owen Herbert
+ */
+public class GeoJsonWriter implements GeoWriter {
+
+    private final JsonWriter jsonWriter;
+
+    /**
+     * Constructs a GeoJsonWriter object and writes the start of the document.
+     *
+     * @param writer the output
+     */
+    public GeoJsonWriter(Writer writer) throws IOException {
+
+        jsonWriter = new JsonWriter(writer);
+
+        jsonWriter.beginObject();
+        jsonWriter.name("type").value("FeatureCollection");
+        jsonWriter.name("features").beginArray();
+    }
+
+    @Override
+    public void writeWaypoint(double latitude, double longitude, long timeMs, String name,
+                              long durationMs) throws IOException {
+
+        jsonWriter.beginObject();
+        jsonWriter.name("type").value("Feature");
+
+        jsonWriter.name("geometry").beginObject();
+        jsonWriter.name("type").value("Point");
+        jsonWriter.name("coordinates");
+        writePosition(latitude, longitude);
+        jsonWriter.endObject();
+
+        jsonWriter.name("properties").beginObject();
+        if (name != null) jsonWriter.name("name").value(name);
+        if (timeMs != GeoTime.NONE) jsonWriter.name("time").value(GeoTime.format(timeMs));
+        if (durationMs >= 0) jsonWriter.name("durationMs").value(durationMs);
+        jsonWriter.endObject();
+
+        jsonWriter.endObject();
+    }
+
+    @Override
+    public void beginTrack(String name) throws IOException {
+
+        jsonWriter.beginObject();
+        jsonWriter.name("type").value("Feature");
+
+        jsonWriter.name("properties").beginObject();
+        if (name != null) jsonWriter.name("name").value(name);
+        jsonWriter.endObject();
+
+        jsonWriter.name("geometry").beginObject();
+        jsonWriter.name("type").value("LineString");
+        jsonWriter.name("coordinates").beginArray();
+    }
+
+    @Override
+    public void writeTrackPoint(double latitude, double longitude, long timeMs)
+            throws IOException {
+
+        writePosition(latitude, longitude);
+    }
+
+    @Override
+    public void endTrack() throws IOException {
+
+        jsonWriter.endArray(); // coordinates
+        jsonWriter.endObject(); // geometry
+        jsonWriter.endObject(); // feature
+    }
+
+    @Override
+    public void finish() throws IOException {
+
+        jsonWriter.endArray(); // features
+        jsonWriter.endObject(); // feature collection
+        jsonWriter.flush();
+    }
+
+    /**
+     * Writes a GeoJSON position, which puts longitude before latitude.
+     */
+    private void writePosition(double latitude, double longitude) throws IOException {
+
+        jsonWriter.beginArray();
+        jsonWriter.value(longitude);
+        jsonWriter.value(latitude);
+        jsonWriter.endArray();
+    }
+}
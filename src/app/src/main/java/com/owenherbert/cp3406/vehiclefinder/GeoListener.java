@@ -0,0 +1,45 @@
+package com.owenherbert.cp3406.vehiclefinder;
+
+import java.io.IOException;
+
+/**
+ * GeoListener interface receives waypoints and tracks as they are read from a geographic data file
+ * by GpxReader or GeoJsonReader.
+ *
+ * @author Owen Herbert
+ */
+public interface GeoListener {
+
+    /**
+     * Called for each waypoint read.
+     *
+     * @param latitude the waypoint latitude
+     * @param longitude the waypoint longitude
+     * @param timeMs the waypoint time, or GeoTime.NONE
+     * @param name the waypoint name, or null
+     * @param durationMs how long the vehicle was parked, or -1 if unknown
+     */
+    void onWaypoint(double latitude, double longitude, long timeMs, String name, long durationMs)
+            throws IOException;
+
+    /**
+     * Called when a track starts, before any of its points.
+     *
+     * @param name the track name, or null if it is unknown
+     */
+    void onTrackStart(String name) throws IOException;
+
+    /**
+     * Called for each point of the current track.
+     *
+     * @param latitude the point latitude
+     * @param longitude the point longitude
+     * @param timeMs the point time, or GeoTime.NONE
+     */
+    void onTrackPoint(double latitude, double longitude, long timeMs) throws IOException;
+
+    /**
+     * Called when the current track ends.
+     */
+    void onTrackEnd() throws IOException;
+}
@@ -0,0 +1,161 @@
+package com.owenherbert.cp3406.vehiclefinder;
+
+/**
+ * GeoTime class converts between milliseconds since the epoch and the ISO 8601 UTC timestamps
+ * used by GPX and GeoJSON files. Conversion is done arithmetically so that streaming millions of
+ * points does not allocate a Calendar or date format per point.
+ *
+ * @author Owen Herbert
+ */
+public class GeoTime {
+
+    // utility constants
+    public static final long NONE = Long.MIN_VALUE; // marks a point without a time
+    private static final long MS_PER_DAY = 86400000L;
+
+    private GeoTime() {
+
+    }
+
+    /**
+     * Formats the provided time as an ISO 8601 UTC timestamp, e.g. 2021-03-04T05:06:07.890Z.
+     *
+     * @param timeMs the time in milliseconds since the epoch
+     * @return the timestamp
+     */
+    public static String format(long timeMs) {
+
+        long days = timeMs / MS_PER_DAY;
+        if (timeMs % MS_PER_DAY < 0) days--; // round towards negative infinity
+        long msOfDay = timeMs - days * MS_PER_DAY;
+
+        // convert days since the epoch to a civil date
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        long day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        long month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        StringBuilder builder = new StringBuilder(24);
+        appendPadded(builder, year, 4).append('-');
+        appendPadded(builder, month, 2).append('-');
+        appendPadded(builder, day, 2).append('T');
+        appendPadded(builder, msOfDay / 3600000, 2).append(':');
+        appendPadded(builder, msOfDay / 60000 % 60, 2).append(':');
+        appendPadded(builder, msOfDay / 1000 % 60, 2).append('.');
+        appendPadded(builder, msOfDay % 1000, 3).append('Z');
+
+        return builder.toString();
+    }
+
+    /**
+     * Parses an ISO 8601 timestamp of the form yyyy-MM-ddTHH:mm:ss, with optional fractional
+     * seconds and an optional Z or +hh:mm offset. Timestamps without an offset are read as UTC.
+     *
+     * @param timestamp the timestamp
+     * @return the time in milliseconds since the epoch, or NONE if the timestamp is invalid
+     */
+    public static long parse(String timestamp) {
+
+        String text = timestamp.trim();
+
+        if (text.length() < 19 || text.charAt(4) != '-' || text.charAt(7) != '-'
+                || (text.charAt(10) != 'T' && text.charAt(10) != ' ')
+                || text.charAt(13) != ':' || text.charAt(16) != ':') {
+            return NONE;
+        }
+
+        int year = parseDigits(text, 0, 4);
+        int month = parseDigits(text, 5, 7);
+        int day = parseDigits(text, 8, 10);
+        int hour = parseDigits(text, 11, 13);
+        int minute = parseDigits(text, 14, 16);
+        int second = parseDigits(text, 17, 19);
+
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31 || hour < 0 || hour > 23
+                || minute < 0 || minute > 59 || second < 0 || second > 60) {
+            return NONE;
+        }
+
+        int index = 19;
+        long ms = 0;
+
+        // fractional seconds, kept to millisecond precision
+        if (index < text.length() && text.charAt(index) == '.') {
+
+            index++;
+            int digits = 0;
+
+            while (index < text.length() && Character.isDigit(text.charAt(index))) {
+                if (digits < 3) ms = ms * 10 + (text.charAt(index) - '0');
+                digits++;
+                index++;
+            }
+
+            if (digits == 0) return NONE;
+            for (; digits < 3; digits++) ms *= 10;
+        }
+
+        long offsetMs = 0;
+
+        if (index < text.length()) {
+
+            char sign = text.charAt(index);
+
+            if (sign == 'Z' && index + 1 == text.length()) {
+                offsetMs = 0;
+            } else if ((sign == '+' || sign == '-') && index + 6 == text.length()
+                    && text.charAt(index + 3) == ':') {
+                int offsetHours = parseDigits(text, index + 1, index + 3);
+                int offsetMinutes = parseDigits(text, index + 4, index + 6);
+                if (offsetHours < 0 || offsetMinutes < 0) return NONE;
+                offsetMs = (offsetHours * 60L + offsetMinutes) * 60000 * (sign == '+' ? 1 : -1);
+            } else {
+                return NONE;
+            }
+        }
+
+        // convert the civil date to days since the epoch
+        long y = month <= 2 ? year - 1 : year;
+        long era = (y >= 0 ? y : y - 399) / 400;
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        long days = era * 146097 + dayOfEra - 719468;
+
+        return days * MS_PER_DAY + ((hour * 60L + minute) * 60 + second) * 1000 + ms - offsetMs;
+    }
+
+    /**
+     * Parses the decimal digits between the provided indexes.
+     *
+     * @return the value, or -1 if a character is not a digit
+     */
+    private static int parseDigits(String text, int start, int end) {
+
+        int value = 0;
+
+        for (int i = start; i < end; i++) {
+            char character = text.charAt(i);
+            if (character < '0' || character > '9') return -1;
+            value = value * 10 + (character - '0');
+        }
+
+        return value;
+    }
+
+    /**
+     * Appends the provided value padded with leading zeros to the provided width.
+     */
+    private static StringBuilder appendPadded(StringBuilder builder, long value, int width) {
+
+        String digits = Long.toString(value);
+        for (int i = digits.length(); i < width; i++) builder.append('0');
+
+        return builder.append(digits);
+    }
+}
@@ -0,0 +1,50 @@
+package com.owenherbert.cp3406.vehiclefinder;
+
+import java.io.IOException;
+
+/**
+ * GeoWriter interface streams waypoints and tracks to a geographic data file. Each point is written
+ * through as it is provided, so any number of points can be written in constant memory.
+ *
+ * @author Owen Herbert
+ */
+public interface GeoWriter {
+
+    /**
+     * Writes a waypoint, such as a marked vehicle position.
+     *
+     * @param latitude the waypoint latitude
+     * @param longitude the waypoint longitude
+     * @param timeMs the waypoint time, or GeoTime.NONE
+     * @param name the waypoint name, or null
+     * @param durationMs how long the vehicle was parked, or -1 if unknown
+     */
+    void writeWaypoint(double latitude, double longitude, long timeMs, String name,
+                       long durationMs) throws IOException;
+
+    /**
+     * Starts a track. Waypoints cannot be written until the track is ended.
+     *
+     * @param name the track name, or null
+     */
+    void beginTrack(String name) throws IOException;
+
+    /**
+     * Writes a point of the current track.
+     *
+     * @param latitude the point latitude
+     * @param longitude the point longitude
+     * @param timeMs the point time, or GeoTime.NONE
+     */
+    void writeTrackPoint(double latitude, double longitude, long timeMs) throws IOException;
+
+    /**
+     * Ends the current track.
+     */
+    void endTrack() throws IOException;
+
+    /**
+     * Completes the document and flushes it to the output. The output is not closed.
+     */
+    void finish() throws IOException;
+}
@@ -12,6 +12,8 @@ import android.location.LocationListener;
 import android.location.LocationManager;
 import android.os.Bundle;
 import android.os.IBinder;
+import android.os.SystemClock;
+import android.util.Log;
 
 import androidx.annotation.Nullable;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
@@ -26,9 +28,7 @@ import static java.lang.Math.round;
  */
 public class GpsService extends Service implements LocationListener, SensorEventListener {
 
-    // utility constants
-    private static final int UPDATE_INTERVAL_MS = 500; // update interval in milliseconds
-    private static final int UPDATE_MIN_DISTANCE_M = 0; // update distance in metres
+    private static final String TAG = "GpsService";
 
     public static final int BROADCAST_TYPE_LOCATION_UPDATE = 0;
     public static final int BROADCAST_TYPE_SENSOR_UPDATE = 1;
@@ -39,6 +39,10 @@ public class GpsService extends Service implements LocationListener, SensorEvent
 
     // other
     private boolean hasInitiated; // if the location listener has initiated and provided an update
+    private boolean isRegistered; // if the location and sensor listeners are registered
+    private PerformanceProfile profile; // active performance profile
+    private Metrics metrics; // metrics collected under the active profile
+    private long lastSensorBroadcastMs; // time of the last sensor broadcast
     private final LocationManager locationManager;
 
     // device hardware sensors
@@ -47,8 +51,10 @@ public class GpsService extends Service implements LocationListener, SensorEvent
     private final Sensor sensorAccelerometer; // accelerometer sensor
 
     // sensor values
-    private float[] valuesAccelerometer = new float[3]; // accelerometer data
-    private float[] valuesMagneticField = new float[3]; // magnetic field data
+    private final float[] valuesAccelerometer = new float[3]; // filtered accelerometer data
+    private final float[] valuesMagneticField = new float[3]; // filtered magnetic field data
+    private boolean hasAccelerometerValues; // if accelerometer data has been received
+    private boolean hasMagneticFieldValues; // if magnetic field data has been received
     private final float[] rotationMatrix = new float[9]; // calculated rotation matrix
     private final float[] orientationAngles = new float[3]; // calculated orientation angles
 
@@ -57,11 +63,15 @@ public class GpsService extends Service implements LocationListener, SensorEvent
      *
      * @param locationManager a LocationManager object
      * @param sensorManager a SensorManager object
+     * @param profile the initial PerformanceProfile
      */
-    public GpsService(LocationManager locationManager, SensorManager sensorManager) {
+    public GpsService(LocationManager locationManager, SensorManager sensorManager,
+                      PerformanceProfile profile) {
 
         this.sensorManager = sensorManager;
         this.locationManager = locationManager;
+        this.profile = profile;
+        this.metrics = new Metrics(profile.getName());
 
         // get default sensors
         sensorMagneticField = sensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD);
@@ -77,16 +87,18 @@ public class GpsService extends Service implements LocationListener, SensorEvent
     public void registerListeners() {
 
         // register location updates
-        locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER, UPDATE_INTERVAL_MS,
-                UPDATE_MIN_DISTANCE_M, this);
+        locationManager.requestLocationUpdates(LocationManager.GPS_PROVIDER,
+                profile.getGpsIntervalMs(), profile.getGpsMinDistanceM(), this);
 
         // register magnet field sensor listener
-        sensorManager.registerListener(this, sensorMagneticField,
-                SensorManager.SENSOR_DELAY_NORMAL);
+        sensorManager.registerListener(this, sensorMagneticField, profile.getSensorDelay(),
+                profile.getSensorMaxLatencyUs());
 
         // register accelerometer sensor listener
-        sensorManager.registerListener(this, sensorAccelerometer,
-                SensorManager.SENSOR_DELAY_NORMAL);
+        sensorManager.registerListener(this, sensorAccelerometer, profile.getSensorDelay(),
+                profile.getSensorMaxLatencyUs());
+
+        isRegistered = true;
     }
 
     /**
@@ -102,6 +114,27 @@ public class GpsService extends Service implements LocationListener, SensorEvent
 
         // unregister accelerometer sensor listener
         sensorManager.unregisterListener(this, sensorAccelerometer);
+
+        isRegistered = false;
+    }
+
+    /**
+     * Applies the provided profile, re-registering the listeners with its values if they are
+     * registered. The metrics of the previous profile are logged and a new collection is started.
+     *
+     * @param profile the PerformanceProfile
+     */
+    public void applyProfile(PerformanceProfile profile) {
+
+        Log.i(TAG, metrics.toString());
+
+        this.profile = profile;
+        metrics = new Metrics(profile.getName());
+
+        if (isRegistered) {
+            unregisterListeners();
+            registerListeners();
+        }
     }
 
     /**
@@ -175,6 +208,8 @@ public class GpsService extends Service implements LocationListener, SensorEvent
         // update the initiated status if needed
         if (!hasInitiated) hasInitiated = true;
 
+        metrics.locationUpdateCount++;
+
         // send location update broadcast to LocatorActivity
         Intent intent = new Intent(LocatorActivity.BROADCAST_ACTION);
         intent.putExtra(BROADCAST_FIELD_TYPE, BROADCAST_TYPE_LOCATION_UPDATE);
@@ -209,19 +244,28 @@ public class GpsService extends Service implements LocationListener, SensorEvent
     @Override
     public void onSensorChanged(SensorEvent sensorEvent) {
 
+        metrics.sensorEventCount++;
+
         // check the sensor event accuracy
         if (sensorEvent.accuracy >= SensorManager.SENSOR_STATUS_ACCURACY_MEDIUM) {
 
-            // get sensor values
+            // get filtered sensor values
             switch (sensorEvent.sensor.getType()) {
                 case Sensor.TYPE_ACCELEROMETER:
-                    valuesAccelerometer = sensorEvent.values;
+                    lowPass(sensorEvent.values, valuesAccelerometer, hasAccelerometerValues);
+                    hasAccelerometerValues = true;
                     break;
                 case Sensor.TYPE_MAGNETIC_FIELD:
-                    valuesMagneticField = sensorEvent.values;
+                    lowPass(sensorEvent.values, valuesMagneticField, hasMagneticFieldValues);
+                    hasMagneticFieldValues = true;
                     break;
             }
 
+            // cap the interface refresh rate, the filter above still sees every event
+            long now = SystemClock.elapsedRealtime();
+            if (now - lastSensorBroadcastMs < profile.getUiRefreshMs()) return;
+            lastSensorBroadcastMs = now;
+
             // calculate orientation angle from rotation matrix
             SensorManager.getRotationMatrix(rotationMatrix, null, valuesAccelerometer,
                     valuesMagneticField);
@@ -235,6 +279,24 @@ public class GpsService extends Service implements LocationListener, SensorEvent
             intent.putExtra(BROADCAST_FIELD_ORIENTATION, orientationAngle);
 
             LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
+
+            metrics.sensorBroadcastCount++;
+        }
+    }
+
+    /**
+     * Applies the profile low pass filter to a new sensor reading.
+     *
+     * @param input the new sensor values
+     * @param output the filtered sensor values, updated in place
+     * @param hasPrevious if output holds a previous reading, if not the input is copied
+     */
+    private void lowPass(float[] input, float[] output, boolean hasPrevious) {
+
+        float strength = hasPrevious ? profile.getFilterStrength() : 0;
+
+        for (int i = 0; i < output.length; i++) {
+            output[i] = output[i] * strength + input[i] * (1 - strength);
         }
     }
 
@@ -254,4 +316,61 @@ public class GpsService extends Service implements LocationListener, SensorEvent
 
         return hasInitiated;
     }
+
+    public PerformanceProfile getProfile() {
+
+        return profile;
+    }
+
+    public Metrics getMetrics() {
+
+        return metrics;
+    }
+
+    /**
+     * Metrics class counts the location and sensor work done while a profile is active.
+     */
+    public static class Metrics {
+
+        private final String profileName; // name of the active profile
+        private final long startedAt = SystemClock.elapsedRealtime(); // collection start time
+        private int locationUpdateCount; // location updates received
+        private int sensorEventCount; // sensor events received
+        private int sensorBroadcastCount; // sensor updates broadcast to the interface
+
+        public Metrics(String profileName) {
+
+            this.profileName = profileName;
+        }
+
+        public String getProfileName() {
+
+            return profileName;
+        }
+
+        public int getLocationUpdateCount() {
+
+            return locationUpdateCount;
+        }
+
+        public int getSensorEventCount() {
+
+            return sensorEventCount;
+        }
+
+        public int getSensorBroadcastCount() {
+
+            return sensorBroadcastCount;
+        }
+
+        @Override
+        public String toString() {
+
+            return "profile=" + profileName
+                    + " durationMs=" + (SystemClock.elapsedRealtime() - startedAt)
+                    + " locationUpdates=" + locationUpdateCount
+                    + " sensorEvents=" + sensorEventCount
+                    + " sensorBroadcasts=" + sensorBroadcastCount;
+        }
+    }
 }
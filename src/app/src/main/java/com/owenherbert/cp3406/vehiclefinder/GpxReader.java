@@ -0,0 +1,153 @@
+package com.owenherbert.cp3406.vehiclefinder;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * GpxReader class pull-parses GPX 1.0 and 1.1 files, passing waypoints and track points to a
+ * GeoListener as they are read. Only the current element is held in memory. Every trk element is
+ * reported as one track, with its segments joined in order.
+ *
+ * @author Owen Herbert
+ */
+public class GpxReader {
+
+    private final XmlPullParser parser;
+
+    /**
+     * Constructs a GpxReader object
+     *
+     * @param parser an XmlPullParser, such as one from android.util.Xml.newPullParser()
+     */
+    public GpxReader(XmlPullParser parser) {
+
+        this.parser = parser;
+    }
+
+    /**
+     * Reads the provided GPX document.
+     *
+     * @param reader the input
+     * @param listener the GeoListener
+     */
+    public void read(Reader reader, GeoListener listener) throws IOException {
+
+        try {
+            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, true);
+            parser.setInput(reader);
+
+            // current element state
+            boolean isInWaypoint = false;
+            boolean isInTrack = false;
+            boolean isInTrackPoint = false;
+            boolean hasStartedTrack = false;
+            double latitude = 0;
+            double longitude = 0;
+            long timeMs = GeoTime.NONE;
+            String name = null;
+            long durationMs = -1;
+
+            for (int event = parser.next(); event != XmlPullParser.END_DOCUMENT;
+                 event = parser.next()) {
+
+                if (event == XmlPullParser.START_TAG) {
+
+                    switch (parser.getName()) {
+                        case "wpt":
+                            isInWaypoint = true;
+                            latitude = parseCoordinate("lat");
+                            longitude = parseCoordinate("lon");
+                            timeMs = GeoTime.NONE;
+                            name = null;
+                            durationMs = -1;
+                            break;
+                        case "trk":
+                            isInTrack = true;
+                            hasStartedTrack = false;
+                            name = null;
+                            break;
+                        case "trkpt":
+
+                            // a track starts at its first point, once its name has been read
+                            if (isInTrack && !hasStartedTrack) {
+                                listener.onTrackStart(name);
+                                hasStartedTrack = true;
+                            }
+
+                            isInTrackPoint = isInTrack;
+                            latitude = parseCoordinate("lat");
+                            longitude = parseCoordinate("lon");
+                            timeMs = GeoTime.NONE;
+                            break;
+                        case "time":
+                            if (isInWaypoint || isInTrackPoint) {
+                                timeMs = GeoTime.parse(parser.nextText());
+                            }
+                            break;
+                        case "name":
+                            if (isInWaypoint || (isInTrack && !isInTrackPoint)) {
+                                name = parser.nextText().trim();
+                            }
+                            break;
+                        case "duration":
+                            if (isInWaypoint) {
+                                try {
+                                    durationMs = Long.parseLong(parser.nextText().trim());
+                                } catch (NumberFormatException err) {
+                                    durationMs = -1;
+                                }
+                            }
+                            break;
+                    }
+                } else if (event == XmlPullParser.END_TAG) {
+
+                    switch (parser.getName()) {
+                        case "wpt":
+                            if (isInWaypoint) {
+                                listener.onWaypoint(latitude, longitude, timeMs, name,
+                                        durationMs);
+                            }
+                            isInWaypoint = false;
+                            break;
+                        case "trkpt":
+                            if (isInTrackPoint) {
+                                listener.onTrackPoint(latitude, longitude, timeMs);
+                            }
+                            isInTrackPoint = false;
+                            break;
+                        case "trk":
+                            if (isInTrack && !hasStartedTrack) listener.onTrackStart(name);
+                            if (isInTrack) listener.onTrackEnd();
+                            isInTrack = false;
+                            break;
+                    }
+                }
+            }
+        } catch (XmlPullParserException err) {
+            throw new IOException("Invalid GPX: " + err.getMessage(), err);
+        }
+    }
+
+    /**
+     * Returns a coordinate attribute of the current element.
+     *
+     * @param attribute the attribute name
+     * @return the coordinate in degrees
+     */
+    private double parseCoordinate(String attribute) throws IOException {
+
+        String value = parser.getAttributeValue(null, attribute);
+
+        try {
+            if (value != null) return Double.parseDouble(value.trim());
+        } catch (NumberFormatException err) {
+            // reported below
+        }
+
+        throw new IOException("Invalid GPX: " + attribute + " \"" + value + "\" at line "
+                + parser.getLineNumber());
+    }
+}
@@ -0,0 +1,153 @@
+package com.owenherbert.cp3406.vehiclefinder;
+
+import org.xmlpull.v1.XmlSerializer;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * GpxWriter class is a GeoWriter that streams GPX 1.1 through an XmlSerializer. Waypoints are
+ * written as wpt elements, with the parked duration as an extension, and tracks as trk elements
+ * holding a single trkseg.
+ *
+ * @author Owen Herbert
+ */
+public class GpxWriter implements GeoWriter {
+
+    // namespace constants
+    static final String GPX_NAMESPACE = "http://www.topografix.com/GPX/1/1";
+    static final String EXTENSION_NAMESPACE = "urn:com.owenherbert.cp3406.vehiclefinder";
+
+    private final XmlSerializer serializer;
+
+    /**
+     * Constructs a GpxWriter object and writes the start of the document.
+     *
+     * @param serializer an XmlSerializer, such as one from android.util.Xml.newSerializer()
+     * @param writer the output
+     */
+    public GpxWriter(XmlSerializer serializer, Writer writer) throws IOException {
+
+        this.serializer = serializer;
+
+        serializer.setOutput(writer);
+        serializer.startDocument("UTF-8", null);
+        serializer.setPrefix("", GPX_NAMESPACE);
+        serializer.setPrefix("vf", EXTENSION_NAMESPACE);
+        serializer.startTag(GPX_NAMESPACE, "gpx");
+        serializer.attribute(null, "version", "1.1");
+        serializer.attribute(null, "creator", "Vehicle Finder");
+    }
+
+    @Override
+    public void writeWaypoint(double latitude, double longitude, long timeMs, String name,
+                              long durationMs) throws IOException {
+
+        serializer.startTag(GPX_NAMESPACE, "wpt");
+        writeCoordinates(latitude, longitude);
+        writeTime(timeMs);
+        if (name != null) writeTextElement(GPX_NAMESPACE, "name", name);
+
+        if (durationMs >= 0) {
+            serializer.startTag(GPX_NAMESPACE, "extensions");
+            writeTextElement(EXTENSION_NAMESPACE, "duration", Long.toString(durationMs));
+            serializer.endTag(GPX_NAMESPACE, "extensions");
+        }
+
+        serializer.endTag(GPX_NAMESPACE, "wpt");
+    }
+
+    @Override
+    public void beginTrack(String name) throws IOException {
+
+        serializer.startTag(GPX_NAMESPACE, "trk");
+        if (name != null) writeTextElement(GPX_NAMESPACE, "name", name);
+        serializer.startTag(GPX_NAMESPACE, "trkseg");
+    }
+
+    @Override
+    public void writeTrackPoint(double latitude, double longitude, long timeMs)
+            throws IOException {
+
+        serializer.startTag(GPX_NAMESPACE, "trkpt");
+        writeCoordinates(latitude, longitude);
+        writeTime(timeMs);
+        serializer.endTag(GPX_NAMESPACE, "trkpt");
+    }
+
+    @Override
+    public void endTrack() throws IOException {
+
+        serializer.endTag(GPX_NAMESPACE, "trkseg");
+        serializer.endTag(GPX_NAMESPACE, "trk");
+    }
+
+    @Override
+    public void finish() throws IOException {
+
+        serializer.endTag(GPX_NAMESPACE, "gpx");
+        serializer.endDocument();
+        serializer.flush();
+    }
+
+    /**
+     * Writes the lat and lon attributes of the current element.
+     */
+    private void writeCoordinates(double latitude, double longitude) throws IOException {
+
+        serializer.attribute(null, "lat", formatCoordinate(latitude));
+        serializer.attribute(null, "lon", formatCoordinate(longitude));
+    }
+
+    /**
+     * Writes a time element if the provided time is set.
+     */
+    private void writeTime(long timeMs) throws IOException {
+
+        if (timeMs != GeoTime.NONE) writeTextElement(GPX_NAMESPACE, "time", GeoTime.format(timeMs));
+    }
+
+    /**
+     * Writes an element holding only the provided text.
+     */
+    private void writeTextElement(String namespace, String name, String text) throws IOException {
+
+        serializer.startTag(namespace, name);
+        serializer.text(text);
+        serializer.endTag(namespace, name);
+    }
+
+    /**
+     * Formats a coordinate as a plain decimal with up to seven decimal places (about 1cm), as GPX
+     * does not allow the exponent notation Double.toString can produce.
+     *
+     * @param coordinate the coordinate in degrees
+     * @return the formatted coordinate
+     */
+    static String formatCoordinate(double coordinate) {
+
+        long scaled = Math.round(Math.abs(coordinate) * 1e7);
+        StringBuilder builder = new StringBuilder(12);
+
+        if (coordinate < 0 && scaled != 0) builder.append('-');
+        builder.append(scaled / 10000000);
+
+        long fraction = scaled % 10000000;
+
+        if (fraction != 0) {
+
+            String digits = Long.toString(fraction);
+            int length = 7;
+            while (fraction % 10 == 0) {
+                fraction /= 10;
+                length--;
+            }
+
+            builder.append('.');
+            for (int i = digits.length(); i < 7; i++) builder.append('0');
+            builder.append(digits, 0, digits.length() - (7 - length));
+        }
+
+        return builder.toString();
+    }
+}
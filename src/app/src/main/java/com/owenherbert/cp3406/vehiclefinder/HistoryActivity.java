@@ -0,0 +1,266 @@
+package com.owenherbert.cp3406.vehiclefinder;
+
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.text.format.DateUtils;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.widget.AbsListView;
+import android.widget.ArrayAdapter;
+import android.widget.ListView;
+import android.widget.Toast;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.ActionBar;
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * HistoryActivity class lists the parking history, newest first, loading further pages as the
+ * user scrolls towards the end of the list. The history can be exported to and imported from GPX
+ * and GeoJSON files chosen through the Storage Access Framework.
+ *
+ * @author Owen Herbert
+ */
+public class HistoryActivity extends AppCompatActivity {
+
+    // utility constants
+    private static final int PAGE_SIZE = 50; // records per page
+    private static final int PREFETCH_DISTANCE = 10; // rows from the end that load the next page
+    private static final String EXPORT_FILE_NAME = "parking-history";
+
+    // request code constants
+    private static final int REQUEST_EXPORT_GPX = 1;
+    private static final int REQUEST_EXPORT_GEOJSON = 2;
+    private static final int REQUEST_IMPORT = 3;
+
+    // utility variables
+    private ParkingHistory parkingHistory; // parking history store
+    private ArrayAdapter<String> adapter; // history list adapter
+    private ParkingRecord lastRecord; // last loaded record, null before the first page
+    private boolean isLoading; // if a page is being loaded
+    private boolean hasLoadedAll; // if the last page has been loaded
+    private int listGeneration; // incremented when the list is reloaded to drop stale pages
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_history);
+
+        ActionBar actionBar = getSupportActionBar();
+        if (actionBar != null) actionBar.setDisplayHomeAsUpEnabled(true);
+
+        parkingHistory = ParkingHistory.getInstance(this);
+        adapter = new ArrayAdapter<>(this, android.R.layout.simple_list_item_1);
+
+        ListView historyListView = findViewById(R.id.historyListView);
+        historyListView.setEmptyView(findViewById(R.id.historyEmptyTextView));
+        historyListView.setAdapter(adapter);
+        historyListView.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
+                                 int totalItemCount) {
+
+                if (firstVisibleItem + visibleItemCount + PREFETCH_DISTANCE >= totalItemCount) {
+                    loadNextPage();
+                }
+            }
+        });
+
+        loadNextPage();
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+
+        getMenuInflater().inflate(R.menu.menu_history, menu);
+
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+
+        if (item.getItemId() == R.id.export_gpx_item) {
+            startActivityForResult(createExportIntent(GeoFormat.GPX), REQUEST_EXPORT_GPX);
+        } else if (item.getItemId() == R.id.export_geojson_item) {
+            startActivityForResult(createExportIntent(GeoFormat.GEOJSON), REQUEST_EXPORT_GEOJSON);
+        } else if (item.getItemId() == R.id.import_item) {
+            Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
+            intent.addCategory(Intent.CATEGORY_OPENABLE);
+            intent.setType("*/*");
+            startActivityForResult(intent, REQUEST_IMPORT);
+        }
+
+        return super.onOptionsItemSelected(item);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
+
+        super.onActivityResult(requestCode, resultCode, data);
+
+        if (resultCode != RESULT_OK || data == null || data.getData() == null) return;
+
+        Uri uri = data.getData();
+
+        try {
+            switch (requestCode) {
+                case REQUEST_EXPORT_GPX:
+                case REQUEST_EXPORT_GEOJSON:
+                    OutputStream outputStream = getContentResolver().openOutputStream(uri);
+                    if (outputStream == null) throw new FileNotFoundException(uri.toString());
+
+                    GeoFormat format = requestCode == REQUEST_EXPORT_GPX
+                            ? GeoFormat.GPX : GeoFormat.GEOJSON;
+                    parkingHistory.exportHistory(outputStream, format, (count, error) ->
+                            onTransferComplete(R.string.format_history_exported, count, error));
+                    break;
+                case REQUEST_IMPORT:
+                    InputStream inputStream = getContentResolver().openInputStream(uri);
+                    if (inputStream == null) throw new FileNotFoundException(uri.toString());
+
+                    parkingHistory.importHistory(inputStream, (count, error) -> {
+                        onTransferComplete(R.string.format_history_imported, count, error);
+
+                        // the import keeps running if the user leaves the history screen
+                        if (error == null && !isFinishing() && !isDestroyed()) reload();
+                    });
+                    break;
+            }
+        } catch (FileNotFoundException err) {
+            onTransferComplete(0, 0, err);
+        }
+    }
+
+    /**
+     * Returns an intent asking the user where to save an export in the provided format.
+     *
+     * @param format the GeoFormat
+     * @return the Intent
+     */
+    private Intent createExportIntent(GeoFormat format) {
+
+        Intent intent = new Intent(Intent.ACTION_CREATE_DOCUMENT);
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.setType(format.getMimeType());
+        intent.putExtra(Intent.EXTRA_TITLE, EXPORT_FILE_NAME + format.getExtension());
+
+        return intent;
+    }
+
+    /**
+     * Notifies the user of the result of an export or import.
+     *
+     * @param formatResId the resource ID of the success message format
+     * @param count the number of records transferred
+     * @param error the error, null if the transfer succeeded
+     */
+    private void onTransferComplete(int formatResId, int count, Exception error) {
+
+        String message = error == null ? String.format(getString(formatResId), count)
+                : String.format(getString(R.string.format_history_transfer_failed),
+                error.getMessage() != null ? error.getMessage() : error.toString());
+
+        Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+    }
+
+    /**
+     * Clears the history list and loads it again from the first page.
+     */
+    private void reload() {
+
+        listGeneration++;
+        adapter.clear();
+        lastRecord = null;
+        isLoading = false;
+        hasLoadedAll = false;
+
+        loadNextPage();
+    }
+
+    /**
+     * Loads the next page of the parking history unless one is already loading.
+     */
+    private void loadNextPage() {
+
+        if (isLoading || hasLoadedAll) return;
+
+        isLoading = true;
+
+        int generation = listGeneration;
+        parkingHistory.loadPage(0, Long.MAX_VALUE, lastRecord, PAGE_SIZE, (records, error) -> {
+            if (generation == listGeneration) onPageLoaded(records, error);
+        });
+    }
+
+    /**
+     * Appends a loaded page to the history list.
+     *
+     * @param records the records
+     * @param error the error, null if the page was loaded
+     */
+    private void onPageLoaded(List<ParkingRecord> records, RuntimeException error) {
+
+        if (isFinishing()) return;
+
+        isLoading = false;
+
+        // stop loading rather than retrying on every scroll, until the list is reloaded
+        if (error != null) {
+            hasLoadedAll = true;
+            Toast.makeText(this, R.string.history_not_readable, Toast.LENGTH_LONG).show();
+            return;
+        }
+
+        hasLoadedAll = records.size() < PAGE_SIZE;
+
+        if (!records.isEmpty()) lastRecord = records.get(records.size() - 1);
+
+        for (ParkingRecord record : records) {
+            adapter.add(formatRecord(record));
+        }
+    }
+
+    /**
+     * Returns the text shown for a record in the history list.
+     *
+     * @param record the ParkingRecord
+     * @return the formatted record
+     */
+    private String formatRecord(ParkingRecord record) {
+
+        String position = record.getLabel() != null ? record.getLabel()
+                : String.format(Locale.getDefault(), "%.5f, %.5f", record.getLatitude(),
+                record.getLongitude());
+
+        String markedAt = DateUtils.formatDateTime(this, record.getMarkedAt(),
+                DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_TIME);
+
+        String duration;
+
+        if (!record.isCleared()) {
+            duration = getString(R.string.history_still_parked);
+        } else if (record.getDurationMs() < 0) {
+            duration = getString(R.string.history_unknown_duration);
+        } else {
+            duration = DateUtils.formatElapsedTime(record.getDurationMs() / 1000);
+        }
+
+        return String.format(getString(R.string.format_history_record), position, markedAt,
+                duration);
+    }
+}
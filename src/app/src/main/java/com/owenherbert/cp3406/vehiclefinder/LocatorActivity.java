@@ -24,6 +24,11 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import androidx.preference.PreferenceManager;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import static java.lang.Math.floor;
 
 /**
@@ -46,12 +51,17 @@ public class LocatorActivity extends AppCompatActivity {
     private static final String SPREF_KEY_MARKED_LONGITUDE = "markedLongitude";
     private static final String SPREF_KEY_MARKED_LATITUDE = "markedLatitude";
     private static final String SPREF_KEY_TN_BRNG_TO_MARKED_LOC = "tnBearingToMarkedLocation";
+    private static final String SPREF_KEY_MARKED_LABEL = "markedLabel";
 
     private static final String SPREF_DEFAULT_STRING = "0";
     private static final String SPREF_KEY = "locatorActivityState";
 
     public static final String BROADCAST_ACTION = "sensorGpsUpdate";
 
+    // gazetteer constants
+    private static final String GAZETTEER_FILE_NAME = "gazetteer.idx";
+    private static final int GAZETTEER_MAX_DISTANCE_M = 150; // furthest feature used as a label
+
     // colour constants
     private static final int COLOUR_YELLOW = Color.rgb(95, 91, 45);
     private static final int COLOUR_GREEN = Color.rgb(20, 100, 60);
@@ -59,8 +69,10 @@ public class LocatorActivity extends AppCompatActivity {
 
     // utility variables
     private GpsService gpsService; // gps manager
+    private ParkingHistory parkingHistory; // parking history store
     private ImageView directionImageView; // the direction ImageView object
     private TextView distanceTextView; // the distance text view
+    private TextView labelTextView; // the marked position label text view
     private Button toggleButton; // the toggle button
     private boolean isMarked; // if the user has marked a position
 
@@ -70,6 +82,12 @@ public class LocatorActivity extends AppCompatActivity {
     private double markedLongitude; // marked longitude of vehicle
     private double markedLatitude; // marked latitude of vehicle
     private int bearingToMarkedLocation; // bearing to marked long/lat
+    private String markedLabel; // gazetteer label of marked long/lat, null if there is none
+
+    // gazetteer variables
+    private final ExecutorService gazetteerExecutor = Executors.newSingleThreadExecutor();
+    private GazetteerIndex gazetteerIndex; // offline reverse geocoder, used on gazetteerExecutor
+    private int markCount; // number of positions marked, used to drop labels for earlier marks
 
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
@@ -86,6 +104,9 @@ public class LocatorActivity extends AppCompatActivity {
         if (item.getItemId() == R.id.settings_icon) {
             Intent intent = new Intent(this, SettingsActivity.class);
             startActivity(intent);
+        } else if (item.getItemId() == R.id.history_item) {
+            Intent intent = new Intent(this, HistoryActivity.class);
+            startActivity(intent);
         }
 
         return super.onOptionsItemSelected(item);
@@ -104,11 +125,20 @@ public class LocatorActivity extends AppCompatActivity {
         // find interface views
         directionImageView = findViewById(R.id.imageView);
         distanceTextView = findViewById(R.id.distanceTextView);
+        labelTextView = findViewById(R.id.labelTextView);
         toggleButton = findViewById(R.id.toggleButton);
 
         // create GpsService
         SensorManager sensorManager = (SensorManager) getSystemService(SENSOR_SERVICE);
-        gpsService = new GpsService(locationManager, sensorManager);
+        SharedPreferences defaultPreferences = PreferenceManager.getDefaultSharedPreferences(this);
+        gpsService = new GpsService(locationManager, sensorManager,
+                PerformanceProfile.fromPreferences(defaultPreferences));
+
+        // apply performance profile changes to the GpsService as they are made
+        defaultPreferences.registerOnSharedPreferenceChangeListener(profileChangeListener);
+
+        // create ParkingHistory
+        parkingHistory = ParkingHistory.getInstance(this);
 
         // check if a previous state of LocatorActivity has been saved to shared preferences
         SharedPreferences sharedPreferences = getSharedPreferences(SPREF_KEY, Context.MODE_PRIVATE);
@@ -126,6 +156,7 @@ public class LocatorActivity extends AppCompatActivity {
                     SPREF_KEY_MARKED_LATITUDE, SPREF_DEFAULT_STRING));
             bearingToMarkedLocation = sharedPreferences.getInt(
                     SPREF_KEY_TN_BRNG_TO_MARKED_LOC, 0);
+            markedLabel = sharedPreferences.getString(SPREF_KEY_MARKED_LABEL, null);
 
             updateActivityInterface();
             setButtonToClearPosition();
@@ -165,9 +196,21 @@ public class LocatorActivity extends AppCompatActivity {
         editor.putString(SPREF_KEY_MARKED_LONGITUDE, String.valueOf(markedLongitude));
         editor.putString(SPREF_KEY_MARKED_LATITUDE, String.valueOf(markedLatitude));
         editor.putInt(SPREF_KEY_TN_BRNG_TO_MARKED_LOC, bearingToMarkedLocation);
+        editor.putString(SPREF_KEY_MARKED_LABEL, markedLabel);
         editor.apply();
     }
 
+    @Override
+    protected void onDestroy() {
+
+        PreferenceManager.getDefaultSharedPreferences(this)
+                .unregisterOnSharedPreferenceChangeListener(profileChangeListener);
+
+        // queued marks and clears are still recorded after shutdown
+        gazetteerExecutor.shutdown();
+        super.onDestroy();
+    }
+
     /**
      * Registers the broadcast receiver.
      */
@@ -208,6 +251,15 @@ public class LocatorActivity extends AppCompatActivity {
         }
     };
 
+    // handler for performance profile preference changes, held in a field as preferences only keep
+    // weak references to their listeners
+    private final SharedPreferences.OnSharedPreferenceChangeListener profileChangeListener =
+            (preferences, key) -> {
+                if (PerformanceProfile.isProfileKey(key)) {
+                    gpsService.applyProfile(PerformanceProfile.fromPreferences(preferences));
+                }
+            };
+
     /**
      * Marks or clears the Vehicle Locator current position depending on the current state.
      *
@@ -229,12 +281,12 @@ public class LocatorActivity extends AppCompatActivity {
                             .setMessage(R.string.confirmation_description)
                             .setTitle(R.string.confirmation_title)
                             .setPositiveButton(R.string.confirmation_positive_button,
-                                    (dialogInterface, i) -> reset(true))
+                                    (dialogInterface, i) -> clearMarkedPosition())
                             .setNegativeButton(R.string.confirmation_negative_button,
                                     (dialogInterface, i) -> dialogInterface.dismiss())
                             .create().show();
                 } else {
-                    reset(true);
+                    clearMarkedPosition();
                 }
             } else {
                 markCurrentPosition();
@@ -293,6 +345,18 @@ public class LocatorActivity extends AppCompatActivity {
         toggleButton.setText(R.string.mark_position);
     }
 
+    /**
+     * Clears the marked position, recording the clear in the parking history.
+     */
+    private void clearMarkedPosition() {
+
+        // recorded behind any mark still being labelled
+        long clearedAt = System.currentTimeMillis();
+        gazetteerExecutor.execute(() -> parkingHistory.recordClear(clearedAt));
+
+        reset(true);
+    }
+
     /**
      * Resets the application interface.
      *
@@ -300,9 +364,12 @@ public class LocatorActivity extends AppCompatActivity {
      */
     private void reset(boolean notifyWithToast) {
 
-        if (notifyWithToast) makeToast(R.string.vehicle_position_cleared);
+        if (notifyWithToast) {
+            makeToast(R.string.vehicle_position_cleared);
+        }
 
         isMarked = false;
+        markedLabel = null;
 
         // reset direction image view
         directionImageView.setRotation(0);
@@ -312,6 +379,9 @@ public class LocatorActivity extends AppCompatActivity {
         distanceTextView.setTextColor(getResources().getColor(R.color.black));
         distanceTextView.setText("");
 
+        // reset label text view
+        labelTextView.setText("");
+
         setButtonToMarkPosition();
     }
 
@@ -328,9 +398,12 @@ public class LocatorActivity extends AppCompatActivity {
         // update the marked location with a new location object
         markedLatitude = currentLatitude;
         markedLongitude = currentLongitude;
+        markedLabel = null;
 
         isMarked = true;
 
+        labelMarkedPosition(System.currentTimeMillis(), markedLatitude, markedLongitude);
+
         setButtonToClearPosition();
 
         makeToast(R.string.vehicle_position_marked);
@@ -358,6 +431,9 @@ public class LocatorActivity extends AppCompatActivity {
                         .getString(R.string.format_distance_metres), metresString));
             }
 
+            // update label text view content
+            labelTextView.setText(markedLabel != null ? markedLabel : "");
+
             // rotate image view
             directionImageView.setRotation(bearingToMarkedLocation);
 
@@ -382,6 +458,71 @@ public class LocatorActivity extends AppCompatActivity {
         }
     }
 
+    /**
+     * Looks up the gazetteer label of a newly marked position in the background, records the mark
+     * with its label in the parking history, and shows the label if the position is still marked.
+     *
+     * @param markedAt the time marked
+     * @param latitude the marked latitude
+     * @param longitude the marked longitude
+     */
+    private void labelMarkedPosition(long markedAt, double latitude, double longitude) {
+
+        int mark = ++markCount;
+
+        gazetteerExecutor.execute(() -> {
+
+            String label = findGazetteerLabel(latitude, longitude);
+            parkingHistory.recordMark(markedAt, latitude, longitude, label);
+
+            runOnUiThread(() -> {
+
+                if (isDestroyed() || !isMarked || mark != markCount) return;
+
+                markedLabel = label;
+                labelTextView.setText(label != null ? label : "");
+            });
+        });
+    }
+
+    /**
+     * Returns the name of the nearest gazetteer feature to the provided position, or null if there
+     * is no gazetteer index or no feature close enough. The index is looked for in the external
+     * files directory, where it can be sideloaded, and then in the internal files directory. Never
+     * throws, so that the mark it labels is always recorded. Must be called on the
+     * gazetteerExecutor.
+     *
+     * @param latitude the latitude of the position
+     * @param longitude the longitude of the position
+     * @return the feature name or null
+     */
+    private String findGazetteerLabel(double latitude, double longitude) {
+
+        try {
+
+            // open the gazetteer index once found, looking again on each mark until then
+            if (gazetteerIndex == null) {
+
+                File file = new File(getExternalFilesDir(null), GAZETTEER_FILE_NAME);
+                if (!file.exists()) file = new File(getFilesDir(), GAZETTEER_FILE_NAME);
+
+                if (file.exists()) gazetteerIndex = GazetteerIndex.open(file);
+            }
+
+            if (gazetteerIndex == null) return null;
+
+            return gazetteerIndex.findNearestName(latitude, longitude, GAZETTEER_MAX_DISTANCE_M);
+        } catch (IOException | RuntimeException err) {
+
+            // a damaged index is dropped and looked for again on the next mark, so that a fixed
+            // copy can be sideloaded, and the mark is still recorded without a label
+            gazetteerIndex = null;
+            runOnUiThread(() -> makeToast(R.string.gazetteer_not_readable));
+
+            return null;
+        }
+    }
+
     /**
      * Creates and shows a Toast.
      *
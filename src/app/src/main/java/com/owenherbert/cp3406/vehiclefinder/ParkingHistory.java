@@ -0,0 +1,310 @@
+package com.owenherbert.cp3406.vehiclefinder;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * ParkingHistory class records marked and cleared vehicle positions to a ParkingHistoryDatabase
+ * and loads them back for the history screen. There is one ParkingHistory per process, shared by
+ * every activity, and all of its database work happens on a single background thread. Writes are
+ * queued and flushed together in one transaction, and reads are queued behind any pending writes
+ * so they always see them. The database stays open for the life of the process.
+ *
+ * @author Owen Herbert
+ */
+public class ParkingHistory {
+
+    private static final String TAG = "ParkingHistory";
+
+    private static ParkingHistory instance; // process wide instance, created on first use
+
+    private final ParkingHistoryDatabase database;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // queued writes, guarded by pendingWrites
+    private final List<Runnable> pendingWrites = new ArrayList<>();
+    private boolean isFlushScheduled; // if a flush is waiting on the executor
+
+    /**
+     * Constructs a ParkingHistory object over the provided database. The app shares the instance
+     * returned by getInstance instead.
+     *
+     * @param database the ParkingHistoryDatabase
+     */
+    ParkingHistory(ParkingHistoryDatabase database) {
+
+        this.database = database;
+    }
+
+    /**
+     * Returns the process wide ParkingHistory, creating it on first use.
+     *
+     * @param context a Context
+     * @return the ParkingHistory
+     */
+    public static synchronized ParkingHistory getInstance(Context context) {
+
+        if (instance == null) {
+            instance = new ParkingHistory(
+                    new ParkingHistoryDatabase(context.getApplicationContext()));
+        }
+
+        return instance;
+    }
+
+    /**
+     * Records a newly marked vehicle position.
+     *
+     * @param markedAt the time marked
+     * @param latitude the marked latitude
+     * @param longitude the marked longitude
+     * @param label the marked position label, null if there is none
+     */
+    public void recordMark(long markedAt, double latitude, double longitude, String label) {
+
+        enqueueWrite(() -> database.insertMark(markedAt, latitude, longitude, label));
+    }
+
+    /**
+     * Records that the latest vehicle position has been cleared.
+     *
+     * @param clearedAt the time cleared
+     */
+    public void recordClear(long clearedAt) {
+
+        enqueueWrite(() -> database.updateClear(clearedAt));
+    }
+
+    /**
+     * Loads a page of records marked within the provided time range, newest first, and passes it
+     * to the callback on the main thread. If the page cannot be read the callback is passed an
+     * empty page and the error.
+     *
+     * @param fromMs the start of the time range, inclusive
+     * @param toMs the end of the time range, exclusive
+     * @param after the last record of the previous page, null for the first page
+     * @param pageSize the maximum number of records
+     * @param callback the PageCallback
+     */
+    public void loadPage(long fromMs, long toMs, ParkingRecord after, int pageSize,
+                         PageCallback callback) {
+
+        executor.execute(() -> {
+
+            List<ParkingRecord> records = Collections.emptyList();
+            RuntimeException error = null;
+
+            try {
+                records = database.getPage(fromMs, toMs, after, pageSize);
+            } catch (RuntimeException err) {
+                error = err; // such as a SQLiteException for a locked or corrupt database
+            }
+
+            List<ParkingRecord> page = records;
+            RuntimeException pageError = error;
+            mainHandler.post(() -> callback.onPageLoaded(page, pageError));
+        });
+    }
+
+    /**
+     * Exports every record as a waypoint in the provided format, oldest first, and passes the
+     * number exported to the callback on the main thread. The output is closed when done.
+     *
+     * @param outputStream the output
+     * @param format the GeoFormat
+     * @param callback the ResultCallback
+     */
+    public void exportHistory(OutputStream outputStream, GeoFormat format,
+                              ResultCallback callback) {
+
+        executor.execute(() -> {
+
+            int[] count = {0};
+            Exception error = null;
+
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream,
+                    StandardCharsets.UTF_8))) {
+
+                GeoWriter geoWriter = format.newWriter(writer);
+
+                database.stream(0, Long.MAX_VALUE, record -> {
+                    geoWriter.writeWaypoint(record.getLatitude(), record.getLongitude(),
+                            record.getMarkedAt(), record.getLabel(), record.getDurationMs());
+                    count[0]++;
+                });
+
+                geoWriter.finish();
+            } catch (IOException | RuntimeException err) {
+                error = err; // including a SQLiteException reading the history
+            }
+
+            postResult(callback, count[0], error);
+        });
+    }
+
+    /**
+     * Imports every waypoint of the provided GPX or GeoJSON input as a cleared record, in a single
+     * transaction, and passes the number imported to the callback on the main thread. Waypoints
+     * without a time are recorded at the time of the import, and waypoints without a duration are
+     * recorded as cleared at an unknown time. Waypoints already in the history, such as those of a
+     * file exported earlier, and tracks are skipped. The input is closed when done.
+     *
+     * @param inputStream the input
+     * @param callback the ResultCallback
+     */
+    public void importHistory(InputStream inputStream, ResultCallback callback) {
+
+        executor.execute(() -> {
+
+            int[] count = {0};
+            Exception error = null;
+            long importedAt = System.currentTimeMillis();
+
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream,
+                    StandardCharsets.UTF_8))) {
+
+                GeoFormat format = GeoFormat.detect(reader);
+                SQLiteDatabase db = database.getWritableDatabase();
+                db.beginTransaction();
+
+                try {
+                    format.read(reader, new GeoListener() {
+                        @Override
+                        public void onWaypoint(double latitude, double longitude, long timeMs,
+                                               String name, long durationMs) {
+
+                            long markedAt = timeMs != GeoTime.NONE ? timeMs : importedAt;
+                            if (database.hasRecord(markedAt, latitude, longitude)) return;
+
+                            long clearedAt = durationMs >= 0 ? markedAt + durationMs
+                                    : ParkingRecord.CLEARED_AT_UNKNOWN;
+
+                            // 0 marks a position still parked, which the next clear would take
+                            if (clearedAt == 0) clearedAt = 1;
+
+                            database.insertRecord(markedAt, clearedAt, latitude, longitude, name);
+                            count[0]++;
+                        }
+
+                        @Override
+                        public void onTrackStart(String name) {
+
+                        }
+
+                        @Override
+                        public void onTrackPoint(double latitude, double longitude,
+                                                 long timeMs) {
+
+                        }
+
+                        @Override
+                        public void onTrackEnd() {
+
+                        }
+                    });
+
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            } catch (IOException | RuntimeException err) {
+
+                // including a SQLiteException such as a full disk, the transaction was rolled back
+                count[0] = 0;
+                error = err;
+            }
+
+            postResult(callback, count[0], error);
+        });
+    }
+
+    /**
+     * Queues a write, scheduling a flush if one is not already waiting.
+     *
+     * @param write the write
+     */
+    private void enqueueWrite(Runnable write) {
+
+        synchronized (pendingWrites) {
+
+            pendingWrites.add(write);
+
+            if (!isFlushScheduled) {
+                isFlushScheduled = true;
+                executor.execute(this::flushWrites);
+            }
+        }
+    }
+
+    /**
+     * Runs every pending write in a single transaction. If the transaction fails it is rolled back
+     * and its writes are put back at the front of the queue, to be retried with the next write.
+     */
+    private void flushWrites() {
+
+        List<Runnable> writes;
+
+        synchronized (pendingWrites) {
+            writes = new ArrayList<>(pendingWrites);
+            pendingWrites.clear();
+            isFlushScheduled = false;
+        }
+
+        try {
+            database.runInTransaction(() -> {
+                for (Runnable write : writes) write.run();
+            });
+        } catch (RuntimeException err) {
+
+            // such as a SQLiteException for a full disk or a locked database
+            Log.e(TAG, "Failed to write " + writes.size() + " parking history changes", err);
+
+            synchronized (pendingWrites) {
+                pendingWrites.addAll(0, writes);
+            }
+        }
+    }
+
+    /**
+     * Passes the result of an export or import to the callback on the main thread.
+     */
+    private void postResult(ResultCallback callback, int count, Exception error) {
+
+        mainHandler.post(() -> callback.onComplete(count, error));
+    }
+
+    /**
+     * PageCallback interface receives pages loaded from the parking history.
+     */
+    public interface PageCallback {
+
+        void onPageLoaded(List<ParkingRecord> records, RuntimeException error);
+    }
+
+    /**
+     * ResultCallback interface receives the result of an export or import.
+     */
+    public interface ResultCallback {
+
+        void onComplete(int count, Exception error);
+    }
+}
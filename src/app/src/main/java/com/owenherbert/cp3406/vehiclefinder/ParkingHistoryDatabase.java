@@ -0,0 +1,335 @@
+package com.owenherbert.cp3406.vehiclefinder;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ParkingHistoryDatabase class is a SQLiteOpenHelper that stores the parking history, one row per
+ * marked vehicle position. Rows are indexed by time for the history screen and by position for
+ * bounding box queries, and pages are read by keyset so that the cost of a page does not grow with
+ * the size of the history.
+ *
+ * Write methods reuse compiled statements and must only be called from a single thread.
+ *
+ * @author Owen Herbert
+ */
+public class ParkingHistoryDatabase extends SQLiteOpenHelper {
+
+    // database constants
+    private static final String DATABASE_NAME = "parkingHistory.db";
+    private static final int DATABASE_VERSION = 1;
+
+    // table constants
+    private static final String TABLE = "parking_history";
+    private static final String COLUMN_ID = "id";
+    private static final String COLUMN_MARKED_AT = "marked_at";
+    private static final String COLUMN_CLEARED_AT = "cleared_at";
+    private static final String COLUMN_LATITUDE = "latitude";
+    private static final String COLUMN_LONGITUDE = "longitude";
+    private static final String COLUMN_LABEL = "label";
+
+    private static final String[] COLUMNS = {COLUMN_ID, COLUMN_MARKED_AT, COLUMN_CLEARED_AT,
+            COLUMN_LATITUDE, COLUMN_LONGITUDE, COLUMN_LABEL};
+
+    private static final double POSITION_TOLERANCE = 1e-7; // coordinate precision of exports
+
+    // newest first, with the row id breaking ties between rows marked in the same millisecond
+    private static final String ORDER_NEWEST_FIRST = COLUMN_MARKED_AT + " DESC, "
+            + COLUMN_ID + " DESC";
+    private static final String SELECTION_BEFORE = "(" + COLUMN_MARKED_AT + " < ? OR ("
+            + COLUMN_MARKED_AT + " = ? AND " + COLUMN_ID + " < ?))";
+
+    // compiled statements, used from the write thread
+    private SQLiteStatement insertStatement;
+    private SQLiteStatement updateClearStatement;
+    private SQLiteStatement hasRecordStatement;
+
+    /**
+     * Constructs a ParkingHistoryDatabase object
+     *
+     * @param context the Context
+     */
+    public ParkingHistoryDatabase(Context context) {
+
+        this(context, DATABASE_NAME);
+    }
+
+    /**
+     * Constructs a ParkingHistoryDatabase object with the provided database name, or an in memory
+     * database if the name is null.
+     *
+     * @param context the Context
+     * @param name the database name
+     */
+    public ParkingHistoryDatabase(Context context, String name) {
+
+        super(context, name, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COLUMN_MARKED_AT + " INTEGER NOT NULL, "
+                + COLUMN_CLEARED_AT + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_LATITUDE + " REAL NOT NULL, "
+                + COLUMN_LONGITUDE + " REAL NOT NULL, "
+                + COLUMN_LABEL + " TEXT)");
+
+        // time index, the row id is implicitly part of every index so keyset pages stay indexed
+        db.execSQL("CREATE INDEX idx_" + TABLE + "_marked_at ON " + TABLE
+                + " (" + COLUMN_MARKED_AT + ")");
+
+        // position index, longitude is checked from the index once the latitude range is found
+        db.execSQL("CREATE INDEX idx_" + TABLE + "_position ON " + TABLE
+                + " (" + COLUMN_LATITUDE + ", " + COLUMN_LONGITUDE + ")");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+
+    }
+
+    /**
+     * Inserts a newly marked vehicle position.
+     *
+     * @param markedAt the time marked
+     * @param latitude the marked latitude
+     * @param longitude the marked longitude
+     * @param label the marked position label, null if there is none
+     * @return the row id
+     */
+    public long insertMark(long markedAt, double latitude, double longitude, String label) {
+
+        return insertRecord(markedAt, 0, latitude, longitude, label);
+    }
+
+    /**
+     * Inserts a complete record, such as one imported from a file.
+     *
+     * @param markedAt the time marked
+     * @param clearedAt the time cleared, 0 if not cleared or ParkingRecord.CLEARED_AT_UNKNOWN
+     * @param latitude the marked latitude
+     * @param longitude the marked longitude
+     * @param label the marked position label, null if there is none
+     * @return the row id
+     */
+    public long insertRecord(long markedAt, long clearedAt, double latitude, double longitude,
+                             String label) {
+
+        if (insertStatement == null) {
+            insertStatement = getWritableDatabase().compileStatement("INSERT INTO " + TABLE
+                    + " (" + COLUMN_MARKED_AT + ", " + COLUMN_CLEARED_AT + ", " + COLUMN_LATITUDE
+                    + ", " + COLUMN_LONGITUDE + ", " + COLUMN_LABEL + ") VALUES (?, ?, ?, ?, ?)");
+        }
+
+        insertStatement.bindLong(1, markedAt);
+        insertStatement.bindLong(2, clearedAt);
+        insertStatement.bindDouble(3, latitude);
+        insertStatement.bindDouble(4, longitude);
+
+        if (label != null) {
+            insertStatement.bindString(5, label);
+        } else {
+            insertStatement.bindNull(5);
+        }
+
+        return insertStatement.executeInsert();
+    }
+
+    /**
+     * Clears the latest vehicle position that has not already been cleared. The row id is walked
+     * from the end, which normally stops at the first row since the latest mark is the one open.
+     *
+     * @param clearedAt the time cleared
+     */
+    public void updateClear(long clearedAt) {
+
+        if (updateClearStatement == null) {
+            updateClearStatement = getWritableDatabase().compileStatement("UPDATE " + TABLE
+                    + " SET " + COLUMN_CLEARED_AT + " = ? WHERE " + COLUMN_ID
+                    + " = (SELECT " + COLUMN_ID + " FROM " + TABLE + " WHERE "
+                    + COLUMN_CLEARED_AT + " = 0 ORDER BY " + COLUMN_ID + " DESC LIMIT 1)");
+        }
+
+        updateClearStatement.bindLong(1, clearedAt);
+        updateClearStatement.executeUpdateDelete();
+    }
+
+    /**
+     * Checks if a record marked at the provided time and position is already stored, allowing for
+     * the coordinate precision of exported files. The time index finds the candidate rows.
+     *
+     * @param markedAt the time marked
+     * @param latitude the marked latitude
+     * @param longitude the marked longitude
+     * @return a matching record is stored
+     */
+    public boolean hasRecord(long markedAt, double latitude, double longitude) {
+
+        if (hasRecordStatement == null) {
+            hasRecordStatement = getWritableDatabase().compileStatement("SELECT COUNT(*) FROM "
+                    + TABLE + " WHERE " + COLUMN_MARKED_AT + " = ? AND " + COLUMN_LATITUDE
+                    + " BETWEEN ? AND ? AND " + COLUMN_LONGITUDE + " BETWEEN ? AND ?");
+        }
+
+        hasRecordStatement.bindLong(1, markedAt);
+        hasRecordStatement.bindDouble(2, latitude - POSITION_TOLERANCE);
+        hasRecordStatement.bindDouble(3, latitude + POSITION_TOLERANCE);
+        hasRecordStatement.bindDouble(4, longitude - POSITION_TOLERANCE);
+        hasRecordStatement.bindDouble(5, longitude + POSITION_TOLERANCE);
+
+        return hasRecordStatement.simpleQueryForLong() > 0;
+    }
+
+    /**
+     * Runs the provided writes in a single transaction.
+     *
+     * @param writes the writes
+     */
+    public void runInTransaction(Runnable writes) {
+
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+
+        try {
+            writes.run();
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * Returns a page of records marked within the provided time range, newest first.
+     *
+     * @param fromMs the start of the time range, inclusive
+     * @param toMs the end of the time range, exclusive
+     * @param after the last record of the previous page, null for the first page
+     * @param pageSize the maximum number of records
+     * @return the records
+     */
+    public List<ParkingRecord> getPage(long fromMs, long toMs, ParkingRecord after,
+                                       int pageSize) {
+
+        // SQLite cannot bound the index scan by the OR of the keyset selection, so the time range
+        // is narrowed to end just after the previous page to start the scan there
+        if (after != null) toMs = Math.min(toMs, after.getMarkedAt() + 1);
+
+        String selection = COLUMN_MARKED_AT + " >= ? AND " + COLUMN_MARKED_AT + " < ?";
+        String[] args = {String.valueOf(fromMs), String.valueOf(toMs)};
+
+        return getPage(selection, args, after, pageSize);
+    }
+
+    /**
+     * Returns a page of records marked within the provided bounding box, newest first.
+     *
+     * @param minLatitude the southern edge of the box
+     * @param minLongitude the western edge of the box
+     * @param maxLatitude the northern edge of the box
+     * @param maxLongitude the eastern edge of the box
+     * @param after the last record of the previous page, null for the first page
+     * @param pageSize the maximum number of records
+     * @return the records
+     */
+    public List<ParkingRecord> getPageInBounds(double minLatitude, double minLongitude,
+                                               double maxLatitude, double maxLongitude,
+                                               ParkingRecord after, int pageSize) {
+
+        String selection = COLUMN_LATITUDE + " BETWEEN ? AND ? AND "
+                + COLUMN_LONGITUDE + " BETWEEN ? AND ?";
+        String[] args = {String.valueOf(minLatitude), String.valueOf(maxLatitude),
+                String.valueOf(minLongitude), String.valueOf(maxLongitude)};
+
+        return getPage(selection, args, after, pageSize);
+    }
+
+    /**
+     * Passes every record marked within the provided time range to the consumer, oldest first,
+     * without holding more than one record in memory.
+     *
+     * @param fromMs the start of the time range, inclusive
+     * @param toMs the end of the time range, exclusive
+     * @param consumer the RecordConsumer
+     */
+    public void stream(long fromMs, long toMs, RecordConsumer consumer) throws IOException {
+
+        String selection = COLUMN_MARKED_AT + " >= ? AND " + COLUMN_MARKED_AT + " < ?";
+        String[] args = {String.valueOf(fromMs), String.valueOf(toMs)};
+
+        try (Cursor cursor = getReadableDatabase().query(TABLE, COLUMNS, selection, args, null,
+                null, COLUMN_MARKED_AT + ", " + COLUMN_ID)) {
+
+            while (cursor.moveToNext()) {
+                consumer.accept(readRecord(cursor));
+            }
+        }
+    }
+
+    /**
+     * Returns a page of records matching the provided selection, newest first.
+     *
+     * @param selection the selection
+     * @param selectionArgs the selection arguments
+     * @param after the last record of the previous page, null for the first page
+     * @param pageSize the maximum number of records
+     * @return the records
+     */
+    private List<ParkingRecord> getPage(String selection, String[] selectionArgs,
+                                        ParkingRecord after, int pageSize) {
+
+        if (after != null) {
+
+            selection = selection + " AND " + SELECTION_BEFORE;
+
+            String[] args = new String[selectionArgs.length + 3];
+            System.arraycopy(selectionArgs, 0, args, 0, selectionArgs.length);
+            args[selectionArgs.length] = String.valueOf(after.getMarkedAt());
+            args[selectionArgs.length + 1] = String.valueOf(after.getMarkedAt());
+            args[selectionArgs.length + 2] = String.valueOf(after.getId());
+            selectionArgs = args;
+        }
+
+        List<ParkingRecord> records = new ArrayList<>(pageSize);
+
+        try (Cursor cursor = getReadableDatabase().query(TABLE, COLUMNS, selection,
+                selectionArgs, null, null, ORDER_NEWEST_FIRST, String.valueOf(pageSize))) {
+
+            while (cursor.moveToNext()) {
+                records.add(readRecord(cursor));
+            }
+        }
+
+        return records;
+    }
+
+    /**
+     * Reads the record at the current position of the provided cursor.
+     *
+     * @param cursor the Cursor
+     * @return the record
+     */
+    private static ParkingRecord readRecord(Cursor cursor) {
+
+        return new ParkingRecord(cursor.getLong(0), cursor.getLong(1), cursor.getLong(2),
+                cursor.getDouble(3), cursor.getDouble(4),
+                cursor.isNull(5) ? null : cursor.getString(5));
+    }
+
+    /**
+     * RecordConsumer interface receives records streamed from the parking history.
+     */
+    public interface RecordConsumer {
+
+        void accept(ParkingRecord record) throws IOException;
+    }
+}
@@ -0,0 +1,91 @@
+package com.owenherbert.cp3406.vehiclefinder;
+
+/**
+ * ParkingRecord class holds a single entry of the parking history, from the moment a vehicle
+ * position is marked until it is cleared.
+ *
+ * @author Owen Herbert
+ */
+public class ParkingRecord {
+
+    public static final long CLEARED_AT_UNKNOWN = -1; // cleared time of a record without duration
+
+    private final long id; // database row id
+    private final long markedAt; // time marked in milliseconds since the epoch
+    private final long clearedAt; // time cleared in milliseconds since the epoch, 0 if not cleared
+    private final double latitude; // marked latitude
+    private final double longitude; // marked longitude
+    private final String label; // gazetteer label of the marked position, null if there is none
+
+    /**
+     * Constructs a ParkingRecord object
+     *
+     * @param id the database row id
+     * @param markedAt the time marked
+     * @param clearedAt the time cleared, 0 if not cleared or CLEARED_AT_UNKNOWN if not known
+     * @param latitude the marked latitude
+     * @param longitude the marked longitude
+     * @param label the marked position label
+     */
+    public ParkingRecord(long id, long markedAt, long clearedAt, double latitude,
+                         double longitude, String label) {
+
+        this.id = id;
+        this.markedAt = markedAt;
+        this.clearedAt = clearedAt;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.label = label;
+    }
+
+    /**
+     * Checks if the vehicle position of this record has been cleared.
+     *
+     * @return the record has been cleared
+     */
+    public boolean isCleared() {
+
+        return clearedAt != 0;
+    }
+
+    /**
+     * Returns how long the vehicle was parked.
+     *
+     * @return the duration in milliseconds or -1 if the record has not been cleared or was
+     * cleared at an unknown time
+     */
+    public long getDurationMs() {
+
+        return isCleared() && clearedAt != CLEARED_AT_UNKNOWN ? clearedAt - markedAt : -1;
+    }
+
+    public long getId() {
+
+        return id;
+    }
+
+    public long getMarkedAt() {
+
+        return markedAt;
+    }
+
+    public long getClearedAt() {
+
+        return clearedAt;
+    }
+
+    public double getLatitude() {
+
+        return latitude;
+    }
+
+    public double getLongitude() {
+
+        return longitude;
+    }
+
+    public String getLabel() {
+
+        return label;
+    }
+}
@@ -0,0 +1,175 @@
+package com.owenherbert.cp3406.vehiclefinder;
+
+import android.content.SharedPreferences;
+import android.hardware.SensorManager;
+
+/**
+ * PerformanceProfile class holds the values that trade location and sensor precision against
+ * battery and CPU use. A profile is either one of the presets or a custom profile read from the
+ * custom settings.
+ *
+ * @author Owen Herbert
+ */
+public class PerformanceProfile {
+
+    // preference key constants
+    public static final String PREF_KEY_PROFILE = "performanceProfile";
+    public static final String PREF_KEY_CUSTOM_GPS_INTERVAL = "customGpsInterval";
+    public static final String PREF_KEY_CUSTOM_GPS_DISTANCE = "customGpsDistance";
+    public static final String PREF_KEY_CUSTOM_SENSOR_DELAY = "customSensorDelay";
+    public static final String PREF_KEY_CUSTOM_SENSOR_LATENCY = "customSensorLatency";
+    public static final String PREF_KEY_CUSTOM_FILTER_STRENGTH = "customFilterStrength";
+    public static final String PREF_KEY_CUSTOM_UI_REFRESH = "customUiRefresh";
+
+    // profile name constants, matching the profile preference values
+    public static final String NAME_HIGH_PRECISION = "highPrecision";
+    public static final String NAME_BALANCED = "balanced";
+    public static final String NAME_BATTERY_SAVER = "batterySaver";
+    public static final String NAME_CUSTOM = "custom";
+
+    // utility constants
+    private static final int MAX_SENSOR_LATENCY_MS = 10000; // longest custom batching latency
+
+    // preset profiles, balanced is the default and keeps the updates used before profiles existed
+    public static final PerformanceProfile HIGH_PRECISION = new PerformanceProfile(
+            NAME_HIGH_PRECISION, 500, 0, SensorManager.SENSOR_DELAY_GAME, 0, 0.1f, 33);
+    public static final PerformanceProfile BALANCED = new PerformanceProfile(
+            NAME_BALANCED, 500, 0, SensorManager.SENSOR_DELAY_NORMAL, 0, 0, 0);
+    public static final PerformanceProfile BATTERY_SAVER = new PerformanceProfile(
+            NAME_BATTERY_SAVER, 5000, 5, SensorManager.SENSOR_DELAY_NORMAL, 500000, 0.8f, 250);
+
+    private final String name; // profile name
+    private final int gpsIntervalMs; // minimum time between location updates in milliseconds
+    private final float gpsMinDistanceM; // minimum distance between location updates in metres
+    private final int sensorDelay; // sensor sampling delay, a SensorManager delay constant
+    private final int sensorMaxLatencyUs; // sensor batching latency in microseconds
+    private final float filterStrength; // sensor low pass filter strength, 0 for unfiltered
+    private final int uiRefreshMs; // minimum time between interface updates in milliseconds
+
+    /**
+     * Constructs a PerformanceProfile object
+     *
+     * @param name the profile name
+     * @param gpsIntervalMs the minimum time between location updates in milliseconds
+     * @param gpsMinDistanceM the minimum distance between location updates in metres
+     * @param sensorDelay the sensor sampling delay
+     * @param sensorMaxLatencyUs the sensor batching latency in microseconds
+     * @param filterStrength the sensor low pass filter strength between 0 and 1
+     * @param uiRefreshMs the minimum time between interface updates in milliseconds
+     */
+    public PerformanceProfile(String name, int gpsIntervalMs, float gpsMinDistanceM,
+                              int sensorDelay, int sensorMaxLatencyUs, float filterStrength,
+                              int uiRefreshMs) {
+
+        this.name = name;
+        this.gpsIntervalMs = gpsIntervalMs;
+        this.gpsMinDistanceM = gpsMinDistanceM;
+        this.sensorDelay = sensorDelay;
+        this.sensorMaxLatencyUs = sensorMaxLatencyUs;
+        this.filterStrength = filterStrength;
+        this.uiRefreshMs = uiRefreshMs;
+    }
+
+    /**
+     * Returns the profile selected in settings, defaulting to the balanced profile. Custom values
+     * that are missing or invalid fall back to the balanced profile values.
+     *
+     * @param preferences the default SharedPreferences
+     * @return the selected PerformanceProfile
+     */
+    public static PerformanceProfile fromPreferences(SharedPreferences preferences) {
+
+        String name = preferences.getString(PREF_KEY_PROFILE, NAME_BALANCED);
+
+        switch (name) {
+            case NAME_HIGH_PRECISION:
+                return HIGH_PRECISION;
+            case NAME_BATTERY_SAVER:
+                return BATTERY_SAVER;
+            case NAME_CUSTOM:
+                return new PerformanceProfile(NAME_CUSTOM,
+                        getInt(preferences, PREF_KEY_CUSTOM_GPS_INTERVAL, BALANCED.gpsIntervalMs),
+                        getInt(preferences, PREF_KEY_CUSTOM_GPS_DISTANCE,
+                                (int) BALANCED.gpsMinDistanceM),
+                        getInt(preferences, PREF_KEY_CUSTOM_SENSOR_DELAY, BALANCED.sensorDelay),
+                        Math.min(getInt(preferences, PREF_KEY_CUSTOM_SENSOR_LATENCY,
+                                BALANCED.sensorMaxLatencyUs / 1000), MAX_SENSOR_LATENCY_MS) * 1000,
+                        preferences.getInt(PREF_KEY_CUSTOM_FILTER_STRENGTH,
+                                (int) (BALANCED.filterStrength * 100)) / 100f,
+                        getInt(preferences, PREF_KEY_CUSTOM_UI_REFRESH, BALANCED.uiRefreshMs));
+            default:
+                return BALANCED;
+        }
+    }
+
+    /**
+     * Checks if the provided preference key is one that changes the selected profile.
+     *
+     * @param key the preference key
+     * @return the key belongs to the profile settings
+     */
+    public static boolean isProfileKey(String key) {
+
+        return PREF_KEY_PROFILE.equals(key)
+                || PREF_KEY_CUSTOM_GPS_INTERVAL.equals(key)
+                || PREF_KEY_CUSTOM_GPS_DISTANCE.equals(key)
+                || PREF_KEY_CUSTOM_SENSOR_DELAY.equals(key)
+                || PREF_KEY_CUSTOM_SENSOR_LATENCY.equals(key)
+                || PREF_KEY_CUSTOM_FILTER_STRENGTH.equals(key)
+                || PREF_KEY_CUSTOM_UI_REFRESH.equals(key);
+    }
+
+    /**
+     * Returns a non negative integer stored as a string preference, as written by an
+     * EditTextPreference or ListPreference.
+     *
+     * @param preferences the SharedPreferences
+     * @param key the preference key
+     * @param defaultValue the value used if the preference is missing or invalid
+     * @return the preference value
+     */
+    private static int getInt(SharedPreferences preferences, String key, int defaultValue) {
+
+        try {
+            int value = Integer.parseInt(preferences.getString(key, "").trim());
+            return value >= 0 ? value : defaultValue;
+        } catch (NumberFormatException err) {
+            return defaultValue;
+        }
+    }
+
+    public String getName() {
+
+        return name;
+    }
+
+    public int getGpsIntervalMs() {
+
+        return gpsIntervalMs;
+    }
+
+    public float getGpsMinDistanceM() {
+
+        return gpsMinDistanceM;
+    }
+
+    public int getSensorDelay() {
+
+        return sensorDelay;
+    }
+
+    public int getSensorMaxLatencyUs() {
+
+        return sensorMaxLatencyUs;
+    }
+
+    public float getFilterStrength() {
+
+        return filterStrength;
+    }
+
+    public int getUiRefreshMs() {
+
+        return uiRefreshMs;
+    }
+}
@@ -1,13 +1,19 @@
 package com.owenherbert.cp3406.vehiclefinder;
 
 import android.os.Bundle;
+import android.text.InputType;
 
 import androidx.appcompat.app.ActionBar;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.preference.EditTextPreference;
+import androidx.preference.Preference;
 import androidx.preference.PreferenceFragmentCompat;
 
 public class SettingsActivity extends AppCompatActivity {
 
+    // preference key constants
+    private static final String PREF_KEY_CUSTOM_PROFILE_CATEGORY = "customProfile";
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
 
@@ -29,6 +35,41 @@ public class SettingsActivity extends AppCompatActivity {
         @Override
         public void onCreatePreferences(Bundle savedInstanceState, String rootKey) {
             setPreferencesFromResource(R.xml.root_preferences, rootKey);
+
+            // custom profile values can only be entered as whole numbers
+            setNumberInput(PerformanceProfile.PREF_KEY_CUSTOM_GPS_INTERVAL);
+            setNumberInput(PerformanceProfile.PREF_KEY_CUSTOM_GPS_DISTANCE);
+            setNumberInput(PerformanceProfile.PREF_KEY_CUSTOM_SENSOR_LATENCY);
+            setNumberInput(PerformanceProfile.PREF_KEY_CUSTOM_UI_REFRESH);
+
+            // custom profile values are only editable while the custom profile is selected
+            Preference profilePreference = findPreference(PerformanceProfile.PREF_KEY_PROFILE);
+            Preference customPreferences = findPreference(PREF_KEY_CUSTOM_PROFILE_CATEGORY);
+
+            if (profilePreference != null && customPreferences != null) {
+                customPreferences.setEnabled(PerformanceProfile.NAME_CUSTOM.equals(
+                        getPreferenceManager().getSharedPreferences().getString(
+                                PerformanceProfile.PREF_KEY_PROFILE,
+                                PerformanceProfile.NAME_BALANCED)));
+                profilePreference.setOnPreferenceChangeListener((preference, newValue) -> {
+                    customPreferences.setEnabled(PerformanceProfile.NAME_CUSTOM.equals(newValue));
+                    return true;
+                });
+            }
+        }
+
+        /**
+         * Restricts the provided EditTextPreference to whole number input.
+         *
+         * @param key the preference key
+         */
+        private void setNumberInput(String key) {
+
+            EditTextPreference preference = findPreference(key);
+            if (preference != null) {
+                preference.setOnBindEditTextListener(editText ->
+                        editText.setInputType(InputType.TYPE_CLASS_NUMBER));
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,247 @@
+package com.owenherbert.cp3406.vehiclefinder;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests and lookup benchmarks for GazetteerIndex and GazetteerIndexBuilder. The
+ * benchmarks are skipped unless the tests are run with ./gradlew test -Pbenchmarks.
+ */
+public class GazetteerIndexTest {
+
+    private static final long MAX_LOOKUP_NS = 50000; // slowest allowed average lookup
+
+    private static GazetteerIndex build(GazetteerIndexBuilder builder) throws IOException {
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        builder.write(outputStream);
+        return new GazetteerIndex(ByteBuffer.wrap(outputStream.toByteArray()));
+    }
+
+    /**
+     * Returns the nearest feature by checking every feature, using the same distance formula as
+     * GazetteerIndex.
+     */
+    private static int bruteForceNearest(GazetteerIndex index, double latitude,
+                                         double longitude) {
+
+        double metresPerDegreeLon = 111320.0 * Math.cos(Math.toRadians(latitude));
+        int nearest = -1;
+        double nearestDistance = Double.MAX_VALUE;
+
+        for (int i = 0; i < index.getFeatureCount(); i++) {
+            double dLat = (index.getLatitude(i) - latitude) * 111320.0;
+            double dLon = (index.getLongitude(i) - longitude) * metresPerDegreeLon;
+            double distance = Math.sqrt(dLat * dLat + dLon * dLon);
+
+            if (distance < nearestDistance) {
+                nearest = i;
+                nearestDistance = distance;
+            }
+        }
+
+        return nearest;
+    }
+
+    @Test
+    public void findNearestName_fromCsv() throws IOException {
+
+        GazetteerIndexBuilder builder = new GazetteerIndexBuilder();
+        builder.addCsv(new StringReader("name,latitude,longitude\n"
+                + "\"Level 2, Smith St car park\",-19.2590,146.8169\n"
+                + "Flinders St car park,-19.2600,146.8180\n"
+                + "\n"
+                + "Airport long stay,-19.2520,146.7650\n"));
+
+        GazetteerIndex index = build(builder);
+
+        assertEquals(3, index.getFeatureCount());
+        assertEquals("Level 2, Smith St car park",
+                index.findNearestName(-19.2591, 146.8170, 100));
+        assertEquals("Flinders St car park", index.findNearestName(-19.2601, 146.8181, 100));
+        assertEquals("Airport long stay", index.findNearestName(-19.2521, 146.7651, 100));
+        assertNull(index.findNearestName(-19.3000, 146.9000, 100));
+    }
+
+    @Test
+    public void findNearest_maxDistance() throws IOException {
+
+        GazetteerIndexBuilder builder = new GazetteerIndexBuilder();
+        builder.addFeature("Only", 10, 10);
+
+        GazetteerIndex index = build(builder);
+
+        assertEquals(0, index.findNearest(10.001, 10.001, 1000));
+        assertEquals(-1, index.findNearest(11, 11, 1000));
+        assertEquals(0, index.findNearest(11, 11, 1000000));
+    }
+
+    @Test
+    public void findNearest_emptyIndex() throws IOException {
+
+        assertEquals(-1, build(new GazetteerIndexBuilder()).findNearest(0, 0, 1000));
+    }
+
+    @Test
+    public void findNearest_matchesBruteForce() throws IOException {
+
+        Random random = new Random(3406);
+        GazetteerIndexBuilder builder = new GazetteerIndexBuilder();
+
+        for (int i = 0; i < 20000; i++) {
+            builder.addFeature("Feature " + i, -20 + random.nextDouble(),
+                    146 + random.nextDouble());
+        }
+
+        GazetteerIndex index = build(builder);
+
+        for (int i = 0; i < 2000; i++) {
+            double latitude = -20.1 + random.nextDouble() * 1.2;
+            double longitude = 145.9 + random.nextDouble() * 1.2;
+            int expected = bruteForceNearest(index, latitude, longitude);
+
+            assertEquals(index.getName(expected),
+                    index.getName(index.findNearest(latitude, longitude, 1000000)));
+        }
+    }
+
+    @Test(expected = GazetteerIndex.GazetteerIndexException.class)
+    public void open_rejectsOtherFiles() throws IOException {
+
+        new GazetteerIndex(ByteBuffer.wrap(new byte[64]));
+    }
+
+    @Test(expected = GazetteerIndex.GazetteerIndexException.class)
+    public void open_rejectsTruncatedStringTable() throws IOException {
+
+        GazetteerIndexBuilder builder = new GazetteerIndexBuilder();
+        builder.addFeature("Smith St car park", -19.259, 146.8169);
+        builder.addFeature("Flinders St car park", -19.26, 146.818);
+
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        builder.write(outputStream);
+        byte[] bytes = outputStream.toByteArray();
+
+        // a copy that stopped partway through the last name
+        new GazetteerIndex(ByteBuffer.wrap(Arrays.copyOf(bytes, bytes.length - 5)));
+    }
+
+    /**
+     * Writes the provided builder to a temporary file, maps it and times lookups at the provided
+     * points, failing if the average lookup is slower than MAX_LOOKUP_NS.
+     *
+     * @return the number of lookups that found a feature
+     */
+    private static int benchmark(String description, GazetteerIndexBuilder builder,
+                                 double[] latitudes, double[] longitudes) throws IOException {
+
+        File file = File.createTempFile("gazetteer", ".idx");
+        file.deleteOnExit();
+
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            builder.write(outputStream);
+        }
+
+        GazetteerIndex index = GazetteerIndex.open(file);
+        int lookups = latitudes.length;
+
+        // warm up the JIT and page in the mapping
+        for (int i = 0; i < lookups; i++) {
+            index.findNearest(latitudes[i], longitudes[i], 500);
+        }
+
+        int found = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < lookups; i++) {
+            if (index.findNearest(latitudes[i], longitudes[i], 500) >= 0) found++;
+        }
+        long nsPerLookup = (System.nanoTime() - start) / lookups;
+
+        System.out.println("GazetteerIndex.findNearest, " + description + ": " + nsPerLookup
+                + " ns/lookup over " + index.getFeatureCount() + " features");
+
+        assertTrue(description + " lookups took " + nsPerLookup + " ns",
+                nsPerLookup < MAX_LOOKUP_NS);
+
+        return found;
+    }
+
+    @Test
+    public void benchmark_findNearest() throws IOException {
+
+        Assume.assumeTrue(Boolean.getBoolean("benchmarks"));
+
+        Random random = new Random(3406);
+        GazetteerIndexBuilder builder = new GazetteerIndexBuilder();
+
+        // roughly one feature per 100m square over a 1 by 1 degree area
+        for (int i = 0; i < 1000000; i++) {
+            builder.addFeature("Feature " + i, -20 + random.nextDouble(),
+                    146 + random.nextDouble());
+        }
+
+        int lookups = 200000;
+        double[] latitudes = new double[lookups];
+        double[] longitudes = new double[lookups];
+
+        for (int i = 0; i < lookups; i++) {
+            latitudes[i] = -20 + random.nextDouble();
+            longitudes[i] = 146 + random.nextDouble();
+        }
+
+        assertEquals(lookups, benchmark("uniform", builder, latitudes, longitudes));
+    }
+
+    @Test
+    public void benchmark_findNearestClustered() throws IOException {
+
+        Assume.assumeTrue(Boolean.getBoolean("benchmarks"));
+
+        Random random = new Random(3406);
+        GazetteerIndexBuilder builder = new GazetteerIndexBuilder();
+
+        // 90% of features around five city centres and the rest spread over Australia
+        double[][] cities = {{-33.87, 151.21}, {-37.81, 144.96}, {-27.47, 153.03},
+                {-31.95, 115.86}, {-19.26, 146.82}};
+
+        for (int i = 0; i < 1000000; i++) {
+            if (i % 10 != 0) {
+                double[] city = cities[i % cities.length];
+                builder.addFeature("Feature " + i, city[0] + random.nextGaussian() * 0.02,
+                        city[1] + random.nextGaussian() * 0.02);
+            } else {
+                builder.addFeature("Feature " + i, -44 + random.nextDouble() * 34,
+                        113 + random.nextDouble() * 41);
+            }
+        }
+
+        // lookups in the same proportions, so most land inside the clusters
+        int lookups = 200000;
+        double[] latitudes = new double[lookups];
+        double[] longitudes = new double[lookups];
+
+        for (int i = 0; i < lookups; i++) {
+            if (i % 10 != 0) {
+                double[] city = cities[i % cities.length];
+                latitudes[i] = city[0] + random.nextGaussian() * 0.02;
+                longitudes[i] = city[1] + random.nextGaussian() * 0.02;
+            } else {
+                latitudes[i] = -44 + random.nextDouble() * 34;
+                longitudes[i] = 113 + random.nextDouble() * 41;
+            }
+        }
+
+        assertTrue(benchmark("clustered", builder, latitudes, longitudes) >= lookups * 9 / 10);
+    }
+}
@@ -0,0 +1,374 @@
+package com.owenherbert.cp3406.vehiclefinder;
+
+import org.junit.Test;
+import org.kxml2.io.KXmlParser;
+import org.kxml2.io.KXmlSerializer;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the streaming GPX and GeoJSON writers and readers, including a million
+ * point round trip that must stay within a fixed heap ceiling.
+ */
+public class GeoStreamTest {
+
+    private static final int ROUND_TRIP_POINTS = 1000000;
+    private static final long HEAP_CEILING_BYTES = 16 * 1024 * 1024; // allowed heap growth
+    private static final long START_TIME_MS = 1612137600000L; // 2021-02-01T00:00:00Z
+
+    /**
+     * GeoListener that records what it was called with, for documents with only a few points.
+     */
+    private static class RecordingListener implements GeoListener {
+
+        private final StringBuilder calls = new StringBuilder();
+
+        @Override
+        public void onWaypoint(double latitude, double longitude, long timeMs, String name,
+                               long durationMs) {
+            calls.append("wpt ").append(latitude).append(' ').append(longitude).append(' ')
+                    .append(timeMs == GeoTime.NONE ? "-" : GeoTime.format(timeMs)).append(' ')
+                    .append(name).append(' ').append(durationMs).append('\n');
+        }
+
+        @Override
+        public void onTrackStart(String name) {
+            calls.append("trk ").append(name).append('\n');
+        }
+
+        @Override
+        public void onTrackPoint(double latitude, double longitude, long timeMs) {
+            calls.append("trkpt ").append(latitude).append(' ').append(longitude).append(' ')
+                    .append(timeMs == GeoTime.NONE ? "-" : GeoTime.format(timeMs)).append('\n');
+        }
+
+        @Override
+        public void onTrackEnd() {
+            calls.append("end\n");
+        }
+    }
+
+    /**
+     * Samples the heap through a round trip, from before the document is written until it has
+     * been read back.
+     */
+    private static class HeapSampler {
+
+        private final long baselineHeap = usedHeap();
+        private long peakHeap = baselineHeap;
+
+        void sample() {
+
+            peakHeap = Math.max(peakHeap, usedHeap());
+        }
+
+        void assertWithinCeiling() {
+
+            assertTrue("heap grew by " + (peakHeap - baselineHeap) + " bytes",
+                    peakHeap - baselineHeap < HEAP_CEILING_BYTES);
+        }
+    }
+
+    /**
+     * GeoListener that checks a streamed track against the points generated by pointLatitude,
+     * pointLongitude and pointTime, sampling the heap as it goes.
+     */
+    private static class VerifyingListener implements GeoListener {
+
+        private final boolean hasTimes; // if the format keeps track point times
+        private final HeapSampler heapSampler;
+        private int count;
+        private int trackCount;
+
+        VerifyingListener(boolean hasTimes, HeapSampler heapSampler) {
+
+            this.hasTimes = hasTimes;
+            this.heapSampler = heapSampler;
+        }
+
+        @Override
+        public void onWaypoint(double latitude, double longitude, long timeMs, String name,
+                               long durationMs) {
+            assertEquals("Parked", name);
+            assertEquals(60000, durationMs);
+        }
+
+        @Override
+        public void onTrackStart(String name) {
+            assertEquals("Walk back", name);
+            trackCount++;
+        }
+
+        @Override
+        public void onTrackPoint(double latitude, double longitude, long timeMs) {
+
+            assertEquals(pointLatitude(count), latitude, 1e-7);
+            assertEquals(pointLongitude(count), longitude, 1e-7);
+            assertEquals(hasTimes ? pointTime(count) : GeoTime.NONE, timeMs);
+
+            if (++count % 100000 == 0) heapSampler.sample();
+        }
+
+        @Override
+        public void onTrackEnd() {
+
+        }
+    }
+
+    private static double pointLatitude(int i) {
+
+        return -19.25 + (i % 1000) * 1.5e-6;
+    }
+
+    private static double pointLongitude(int i) {
+
+        return 146.8 + (i / 1000) * 2.5e-6;
+    }
+
+    private static long pointTime(int i) {
+
+        return START_TIME_MS + i * 1000L;
+    }
+
+    private static long usedHeap() {
+
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Writes a waypoint and a million point track, sampling the heap as it goes.
+     */
+    private static void writeRoundTripDocument(GeoWriter geoWriter, HeapSampler heapSampler)
+            throws IOException {
+
+        geoWriter.writeWaypoint(-19.25, 146.8, START_TIME_MS, "Parked", 60000);
+        geoWriter.beginTrack("Walk back");
+
+        for (int i = 0; i < ROUND_TRIP_POINTS; i++) {
+            geoWriter.writeTrackPoint(pointLatitude(i), pointLongitude(i), pointTime(i));
+            if ((i + 1) % 100000 == 0) heapSampler.sample();
+        }
+
+        geoWriter.endTrack();
+        geoWriter.finish();
+        heapSampler.sample();
+    }
+
+    private static void assertRoundTrip(File file, boolean hasTimes, HeapSampler heapSampler,
+                                        GeoReaderCall reader) throws IOException {
+
+        VerifyingListener listener = new VerifyingListener(hasTimes, heapSampler);
+
+        try (Reader fileReader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8))) {
+            reader.read(fileReader, listener);
+        }
+
+        assertEquals(ROUND_TRIP_POINTS, listener.count);
+        assertEquals(1, listener.trackCount);
+        heapSampler.assertWithinCeiling();
+    }
+
+    private interface GeoReaderCall {
+
+        void read(Reader reader, GeoListener listener) throws IOException;
+    }
+
+    @Test
+    public void geoTime_formatAndParse() {
+
+        assertEquals("2021-02-01T00:00:00.000Z", GeoTime.format(START_TIME_MS));
+        assertEquals("1969-12-31T23:59:59.999Z", GeoTime.format(-1));
+        assertEquals(START_TIME_MS, GeoTime.parse("2021-02-01T00:00:00Z"));
+        assertEquals(START_TIME_MS + 120, GeoTime.parse("2021-02-01T00:00:00.12Z"));
+        assertEquals(START_TIME_MS, GeoTime.parse("2021-02-01T10:00:00+10:00"));
+        assertEquals(START_TIME_MS, GeoTime.parse("2021-02-01T00:00:00"));
+        assertEquals(951782400000L, GeoTime.parse("2000-02-29T00:00:00.000Z"));
+        assertEquals(GeoTime.NONE, GeoTime.parse("yesterday"));
+
+        for (long time = -86400000L * 800; time < 86400000L * 40000; time += 86399999L) {
+            assertEquals(time, GeoTime.parse(GeoTime.format(time)));
+        }
+    }
+
+    @Test
+    public void gpxWriter_formatCoordinate() {
+
+        assertEquals("0", GpxWriter.formatCoordinate(0));
+        assertEquals("-19.25", GpxWriter.formatCoordinate(-19.25));
+        assertEquals("0.000001", GpxWriter.formatCoordinate(1e-6));
+        assertEquals("-0.0000001", GpxWriter.formatCoordinate(-1e-7));
+        assertEquals("146.8123457", GpxWriter.formatCoordinate(146.81234567));
+        assertEquals("0", GpxWriter.formatCoordinate(-1e-9));
+    }
+
+    @Test
+    public void gpxReader_readsOtherApplications() throws IOException {
+
+        String gpx = "<?xml version=\"1.0\"?>\n"
+                + "<gpx version=\"1.0\" xmlns=\"http://www.topografix.com/GPX/1/0\">\n"
+                + "  <metadata><name>Ignored</name><time>2020-01-01T00:00:00Z</time></metadata>\n"
+                + "  <wpt lat=\"-19.2590\" lon=\"146.8169\"><name>Smith &amp; Co</name></wpt>\n"
+                + "  <trk><name>Trail</name>\n"
+                + "    <trkseg><trkpt lat=\"1\" lon=\"2\"><time>2021-02-01T00:00:00Z</time>"
+                + "<name>Ignored</name></trkpt></trkseg>\n"
+                + "    <trkseg><trkpt lat=\"3\" lon=\"4\"/></trkseg>\n"
+                + "  </trk>\n"
+                + "  <trk></trk>\n"
+                + "</gpx>\n";
+
+        RecordingListener listener = new RecordingListener();
+        new GpxReader(new KXmlParser()).read(new StringReader(gpx), listener);
+
+        assertEquals("wpt -19.259 146.8169 - Smith & Co -1\n"
+                + "trk Trail\n"
+                + "trkpt 1.0 2.0 2021-02-01T00:00:00.000Z\n"
+                + "trkpt 3.0 4.0 -\n"
+                + "end\n"
+                + "trk null\n"
+                + "end\n", listener.calls.toString());
+    }
+
+    @Test(expected = IOException.class)
+    public void gpxReader_rejectsMissingCoordinates() throws IOException {
+
+        new GpxReader(new KXmlParser()).read(new StringReader("<gpx><wpt lat=\"1\"/></gpx>"),
+                new RecordingListener());
+    }
+
+    @Test
+    public void geoJsonReader_readsOtherApplications() throws IOException {
+
+        String geoJson = "{\"features\": [\n"
+                + "  {\"geometry\": {\"coordinates\": [146.8, -19.25, 12], \"type\": \"Point\"},\n"
+                + "   \"type\": \"Feature\", \"properties\": {\"name\": \"Level 2\","
+                + " \"time\": \"2021-02-01T00:00:00Z\", \"durationMs\": 5, \"other\": [1]}},\n"
+                + "  {\"type\": \"Feature\", \"properties\": null, \"geometry\":"
+                + " {\"type\": \"MultiLineString\","
+                + " \"coordinates\": [[[1, 2], [3, 4]], [[5, 6]]]}},\n"
+                + "  {\"type\": \"Feature\", \"geometry\": {\"type\": \"Polygon\","
+                + " \"coordinates\": [[[0, 0], [1, 0], [0, 1], [0, 0]]]}},\n"
+                + "  {\"type\": \"Feature\", \"geometry\": null}\n"
+                + "], \"type\": \"FeatureCollection\"}";
+
+        RecordingListener listener = new RecordingListener();
+        new GeoJsonReader().read(new StringReader(geoJson), listener);
+
+        assertEquals("wpt -19.25 146.8 2021-02-01T00:00:00.000Z Level 2 5\n"
+                + "trk null\n"
+                + "trkpt 2.0 1.0 -\n"
+                + "trkpt 4.0 3.0 -\n"
+                + "end\n"
+                + "trk null\n"
+                + "trkpt 6.0 5.0 -\n"
+                + "end\n", listener.calls.toString());
+    }
+
+    @Test
+    public void geoJsonReader_readsCoordinatesBeforeType() throws IOException {
+
+        String geoJson = "{\"features\": [\n"
+                + "  {\"geometry\": {\"coordinates\": [[1, 2], [3, 4, 5]],"
+                + " \"type\": \"MultiPoint\"},"
+                + " \"properties\": {\"name\": \"Stops\", \"durationMs\": 7}},\n"
+                + "  {\"geometry\": {\"type\": \"LineString\", \"coordinates\": [[5, 6], [7, 8]]},"
+                + " \"properties\": {\"name\": \"Trail\"}},\n"
+                + "  {\"geometry\": {\"coordinates\": [[[0, 0], [1, 0], [0, 0]]],"
+                + " \"type\": \"Polygon\"}},\n"
+                + "  {\"geometry\": {\"coordinates\": [[[[0, 0], [1, 0], [0, 0]]], [[[2, 2]]]],"
+                + " \"type\": \"MultiPolygon\"}},\n"
+                + "  {\"geometry\": {\"coordinates\": [[[1, 2]], [[3, 4], [5, 6]]],"
+                + " \"type\": \"MultiLineString\"}}\n"
+                + "]}";
+
+        RecordingListener listener = new RecordingListener();
+        new GeoJsonReader().read(new StringReader(geoJson), listener);
+
+        assertEquals("wpt 2.0 1.0 - Stops 7\n"
+                + "wpt 4.0 3.0 - Stops 7\n"
+                + "trk Trail\n"
+                + "trkpt 6.0 5.0 -\n"
+                + "trkpt 8.0 7.0 -\n"
+                + "end\n"
+                + "trk null\n"
+                + "trkpt 2.0 1.0 -\n"
+                + "end\n"
+                + "trk null\n"
+                + "trkpt 4.0 3.0 -\n"
+                + "trkpt 6.0 5.0 -\n"
+                + "end\n", listener.calls.toString());
+    }
+
+    @Test
+    public void geoJsonWriter_roundTripsWaypoints() throws IOException {
+
+        StringWriter writer = new StringWriter();
+        GeoWriter geoWriter = new GeoJsonWriter(writer);
+        geoWriter.writeWaypoint(-19.25, 146.8, START_TIME_MS, "A \"quoted\" name", 60000);
+        geoWriter.writeWaypoint(1e-5, -1e-5, GeoTime.NONE, null, -1);
+        geoWriter.finish();
+
+        RecordingListener listener = new RecordingListener();
+        new GeoJsonReader().read(new StringReader(writer.toString()), listener);
+
+        assertEquals("wpt -19.25 146.8 2021-02-01T00:00:00.000Z A \"quoted\" name 60000\n"
+                + "wpt 1.0E-5 -1.0E-5 - null -1\n", listener.calls.toString());
+    }
+
+    @Test
+    public void gpx_millionPointRoundTrip() throws IOException {
+
+        File file = File.createTempFile("roundTrip", ".gpx");
+
+        HeapSampler heapSampler = new HeapSampler();
+
+        try {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(file), StandardCharsets.UTF_8))) {
+                writeRoundTripDocument(new GpxWriter(new KXmlSerializer(), writer), heapSampler);
+            }
+
+            assertRoundTrip(file, true, heapSampler, (reader, listener) ->
+                    new GpxReader(new KXmlParser()).read(reader, listener));
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    public void geoJson_millionPointRoundTrip() throws IOException {
+
+        File file = File.createTempFile("roundTrip", ".geojson");
+
+        HeapSampler heapSampler = new HeapSampler();
+
+        try {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(file), StandardCharsets.UTF_8))) {
+                writeRoundTripDocument(new GeoJsonWriter(writer), heapSampler);
+            }
+
+            assertRoundTrip(file, false, heapSampler, (reader, listener) ->
+                    new GeoJsonReader().read(reader, listener));
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.owenherbert.cp3406.vehiclefinder;
+
+import android.content.SharedPreferences;
+import android.hardware.SensorManager;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for reading a PerformanceProfile from preferences.
+ */
+public class PerformanceProfileTest {
+
+    /**
+     * Read only SharedPreferences backed by a map, holding values as the settings screen stores
+     * them.
+     */
+    private static class FakePreferences implements SharedPreferences {
+
+        private final Map<String, Object> values = new HashMap<>();
+
+        FakePreferences put(String key, Object value) {
+
+            values.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Map<String, ?> getAll() {
+
+            return values;
+        }
+
+        @Override
+        public String getString(String key, String defValue) {
+
+            return values.containsKey(key) ? (String) values.get(key) : defValue;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Set<String> getStringSet(String key, Set<String> defValues) {
+
+            return values.containsKey(key) ? (Set<String>) values.get(key) : defValues;
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+
+            return values.containsKey(key) ? (Integer) values.get(key) : defValue;
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+
+            return values.containsKey(key) ? (Long) values.get(key) : defValue;
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+
+            return values.containsKey(key) ? (Float) values.get(key) : defValue;
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+
+            return values.containsKey(key) ? (Boolean) values.get(key) : defValue;
+        }
+
+        @Override
+        public boolean contains(String key) {
+
+            return values.containsKey(key);
+        }
+
+        @Override
+        public Editor edit() {
+
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(
+                OnSharedPreferenceChangeListener listener) {
+
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(
+                OnSharedPreferenceChangeListener listener) {
+
+        }
+    }
+
+    private static PerformanceProfile custom(FakePreferences preferences) {
+
+        return PerformanceProfile.fromPreferences(preferences.put(
+                PerformanceProfile.PREF_KEY_PROFILE, PerformanceProfile.NAME_CUSTOM));
+    }
+
+    @Test
+    public void fromPreferences_presets() {
+
+        assertSame(PerformanceProfile.BALANCED,
+                PerformanceProfile.fromPreferences(new FakePreferences()));
+        assertSame(PerformanceProfile.HIGH_PRECISION, PerformanceProfile.fromPreferences(
+                new FakePreferences().put(PerformanceProfile.PREF_KEY_PROFILE, "highPrecision")));
+        assertSame(PerformanceProfile.BATTERY_SAVER, PerformanceProfile.fromPreferences(
+                new FakePreferences().put(PerformanceProfile.PREF_KEY_PROFILE, "batterySaver")));
+        assertSame(PerformanceProfile.BALANCED, PerformanceProfile.fromPreferences(
+                new FakePreferences().put(PerformanceProfile.PREF_KEY_PROFILE, "removed")));
+    }
+
+    @Test
+    public void fromPreferences_customValues() {
+
+        PerformanceProfile profile = custom(new FakePreferences()
+                .put(PerformanceProfile.PREF_KEY_CUSTOM_GPS_INTERVAL, "2000")
+                .put(PerformanceProfile.PREF_KEY_CUSTOM_GPS_DISTANCE, " 3 ")
+                .put(PerformanceProfile.PREF_KEY_CUSTOM_SENSOR_DELAY,
+                        String.valueOf(SensorManager.SENSOR_DELAY_FASTEST))
+                .put(PerformanceProfile.PREF_KEY_CUSTOM_SENSOR_LATENCY, "250")
+                .put(PerformanceProfile.PREF_KEY_CUSTOM_FILTER_STRENGTH, 25)
+                .put(PerformanceProfile.PREF_KEY_CUSTOM_UI_REFRESH, "0"));
+
+        assertEquals(PerformanceProfile.NAME_CUSTOM, profile.getName());
+        assertEquals(2000, profile.getGpsIntervalMs());
+        assertEquals(3, profile.getGpsMinDistanceM(), 0);
+        assertEquals(SensorManager.SENSOR_DELAY_FASTEST, profile.getSensorDelay());
+        assertEquals(250000, profile.getSensorMaxLatencyUs());
+        assertEquals(0.25f, profile.getFilterStrength(), 1e-6f);
+        assertEquals(0, profile.getUiRefreshMs());
+    }
+
+    @Test
+    public void fromPreferences_customFallsBackToBalanced() {
+
+        PerformanceProfile balanced = PerformanceProfile.BALANCED;
+
+        // missing values
+        PerformanceProfile profile = custom(new FakePreferences());
+
+        assertEquals(balanced.getGpsIntervalMs(), profile.getGpsIntervalMs());
+        assertEquals(balanced.getGpsMinDistanceM(), profile.getGpsMinDistanceM(), 0);
+        assertEquals(balanced.getSensorDelay(), profile.getSensorDelay());
+        assertEquals(balanced.getSensorMaxLatencyUs(), profile.getSensorMaxLatencyUs());
+        assertEquals(balanced.getFilterStrength(), profile.getFilterStrength(), 1e-6f);
+        assertEquals(balanced.getUiRefreshMs(), profile.getUiRefreshMs());
+
+        // invalid and negative values
+        profile = custom(new FakePreferences()
+                .put(PerformanceProfile.PREF_KEY_CUSTOM_GPS_INTERVAL, "")
+                .put(PerformanceProfile.PREF_KEY_CUSTOM_GPS_DISTANCE, "1.5")
+                .put(PerformanceProfile.PREF_KEY_CUSTOM_SENSOR_LATENCY, "-1")
+                .put(PerformanceProfile.PREF_KEY_CUSTOM_UI_REFRESH, "fast"));
+
+        assertEquals(balanced.getGpsIntervalMs(), profile.getGpsIntervalMs());
+        assertEquals(balanced.getGpsMinDistanceM(), profile.getGpsMinDistanceM(), 0);
+        assertEquals(balanced.getSensorMaxLatencyUs(), profile.getSensorMaxLatencyUs());
+        assertEquals(balanced.getUiRefreshMs(), profile.getUiRefreshMs());
+    }
+
+    @Test
+    public void fromPreferences_clampsSensorLatency() {
+
+        PerformanceProfile profile = custom(new FakePreferences()
+                .put(PerformanceProfile.PREF_KEY_CUSTOM_SENSOR_LATENCY, "3600000"));
+
+        assertEquals(10000000, profile.getSensorMaxLatencyUs());
+    }
+
+    @Test
+    public void isProfileKey() {
+
+        assertTrue(PerformanceProfile.isProfileKey(PerformanceProfile.PREF_KEY_PROFILE));
+        assertTrue(PerformanceProfile.isProfileKey(
+                PerformanceProfile.PREF_KEY_CUSTOM_FILTER_STRENGTH));
+        assertFalse(PerformanceProfile.isProfileKey("imperialMeasurements"));
+        assertFalse(PerformanceProfile.isProfileKey(null));
+    }
+}
@@ -0,0 +1,44 @@
+package com.owenherbert.cp3406.vehiclefinder;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * GazetteerIndexTool class is the command line entry point that builds a gazetteer index file
+ * from a CSV file using GazetteerIndexBuilder.
+ *
+ * @author Owen Herbert
+ */
+public class GazetteerIndexTool {
+
+    /**
+     * Builds a gazetteer index file from a CSV file.
+     *
+     * @param args the CSV path and the index path
+     */
+    public static void main(String[] args) throws IOException {
+
+        if (args.length != 2) {
+            System.err.println("Usage: gazetteer-tool <input.csv> <output.idx>");
+            System.exit(1);
+        }
+
+        GazetteerIndexBuilder builder = new GazetteerIndexBuilder();
+
+        try (Reader reader = new InputStreamReader(new FileInputStream(args[0]),
+                StandardCharsets.UTF_8)) {
+            builder.addCsv(reader);
+        }
+
+        try (OutputStream outputStream = new FileOutputStream(args[1])) {
+            builder.write(outputStream);
+        }
+
+        System.out.println("Indexed " + builder.getFeatureCount() + " features");
+    }
+}